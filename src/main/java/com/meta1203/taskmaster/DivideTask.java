@@ -0,0 +1,69 @@
+package com.meta1203.taskmaster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * The {@link RecursiveTask} behind {@link Task#divide(Object, Predicate, Function, Function, BinaryOperator)}.
+ * <p>
+ * Besides the caller's own isSmall test, a problem is solved sequentially once the current worker already has
+ * more queued subtasks than idle workers could steal, since forking more would only add overhead.
+ */
+class DivideTask<P, R> extends RecursiveTask<R> {
+	private static final long serialVersionUID = 2741193532760521953L;
+	private static final int SURPLUS = 3;
+	
+	private P problem;
+	private Predicate<P> isSmall;
+	private Function<P, R> solve;
+	private Function<P, List<P>> split;
+	private BinaryOperator<R> merge;
+	
+	public DivideTask(P problem, Predicate<P> isSmall, Function<P, R> solve, Function<P, List<P>> split, BinaryOperator<R> merge) {
+		this.problem = problem;
+		this.isSmall = isSmall;
+		this.solve = solve;
+		this.split = split;
+		this.merge = merge;
+	}
+	
+	@Override
+	protected R compute() {
+		if (isSmall.test(problem)) return solve.apply(problem);
+		if (getSurplusQueuedTaskCount() > SURPLUS) return sequential(problem);
+		
+		List<P> parts = split(problem);
+		List<DivideTask<P, R>> forked = new ArrayList<>(parts.size() - 1);
+		for (int x = parts.size() - 1; x > 0; x--) {
+			DivideTask<P, R> t = new DivideTask<>(parts.get(x), isSmall, solve, split, merge);
+			t.fork();
+			forked.add(t);
+		}
+		R r = new DivideTask<>(parts.get(0), isSmall, solve, split, merge).compute();
+		// forked holds the parts in reverse, and the most recently forked is the cheapest to join
+		for (int x = forked.size() - 1; x >= 0; x--) {
+			r = merge.apply(r, forked.get(x).join());
+		}
+		return r;
+	}
+	
+	private R sequential(P p) {
+		if (isSmall.test(p)) return solve.apply(p);
+		List<P> parts = split(p);
+		R r = sequential(parts.get(0));
+		for (int x = 1; x < parts.size(); x++) {
+			r = merge.apply(r, sequential(parts.get(x)));
+		}
+		return r;
+	}
+	
+	private List<P> split(P p) {
+		List<P> parts = split.apply(p);
+		if (parts == null || parts.isEmpty()) throw new IllegalStateException("Splitting " + p + " produced no parts");
+		return parts;
+	}
+}
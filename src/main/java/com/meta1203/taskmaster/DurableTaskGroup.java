@@ -0,0 +1,270 @@
+package com.meta1203.taskmaster;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import com.meta1203.taskmaster.collections.BinaryCodec;
+
+/**
+ * A group of named {@link Task}s whose results are recorded in a journal on disk, so that a group interrupted
+ * by a crash can be resumed without re-running the Tasks that had already completed.
+ * <p>
+ * Each successful Task appends a record to a memory-mapped, append-only journal. Records are forced to disk in
+ * batches; records written since the last batch survive the process dying, but not the machine losing power.
+ * When a DurableTaskGroup is opened over an existing journal, the journal is replayed, and executing a Task
+ * whose name is already in the journal returns its recorded result instead of running it again.
+ * Failed Tasks are not recorded, so they run again on the next attempt.
+ *
+ * @param <T> the type returned by the Tasks in the group
+ */
+public class DurableTaskGroup<T> implements Closeable {
+	private static final int MAGIC = 0x544D4A31; // "TMJ1"
+	private static final int HEADER = Integer.BYTES;
+	private static final int RECORD_HEADER = Integer.BYTES * 2;
+	private static final int CHUNK = 1 << 20;
+	
+	private Path journal;
+	private BinaryCodec<T> codec;
+	private int syncEvery;
+	private FileChannel channel;
+	private MappedByteBuffer map;
+	private long mapStart;
+	private int unsynced;
+	private Map<String, T> completed = new HashMap<>();
+	private ByteBuffer scratch = ByteBuffer.allocate(256);
+	
+	/**
+	 * Opens a DurableTaskGroup that forces its journal to disk every 256 records
+	 * @param journal the journal file, created if it does not exist
+	 * @param codec the {@link BinaryCodec} used to record results
+	 * @throws IOException if the journal can't be opened
+	 */
+	public DurableTaskGroup(Path journal, BinaryCodec<T> codec) throws IOException {
+		this(journal, codec, 256);
+	}
+	
+	/**
+	 * Opens a DurableTaskGroup
+	 * @param journal the journal file, created if it does not exist
+	 * @param codec the {@link BinaryCodec} used to record results
+	 * @param syncEvery how many records to write between forcing the journal to disk
+	 * @throws IOException if the journal can't be opened
+	 */
+	public DurableTaskGroup(Path journal, BinaryCodec<T> codec, int syncEvery) throws IOException {
+		if (syncEvery < 1) throw new IllegalArgumentException("syncEvery must be at least 1");
+		this.journal = journal;
+		this.codec = codec;
+		this.syncEvery = syncEvery;
+		open();
+	}
+	
+	/**
+	 * Runs the given {@link Supplier} as a Task, unless a Task of the same name has already completed.
+	 * <p>
+	 * The returned Task completes once its result has been written to the journal.
+	 * @param id the name of the Task, which must be the same every time the group is run
+	 * @param s the {@link Supplier} to execute
+	 * @return A Task containing the result of s, or the recorded result if it has already completed
+	 */
+	public Task<T> execute(String id, Supplier<T> s) {
+		synchronized (this) {
+			if (completed.containsKey(id)) return new Task<>(CompletableFuture.completedFuture(completed.get(id)));
+		}
+		CompletableFuture<T> cf = new CompletableFuture<>();
+		Task.execute(s).whenDone((t, e) -> {
+			if (e != null) {
+				cf.completeExceptionally(e);
+				return;
+			}
+			try {
+				record(id, t);
+				cf.complete(t);
+			} catch (RuntimeException ex) {
+				cf.completeExceptionally(ex);
+			}
+		});
+		return new Task<>(cf);
+	}
+	
+	/**
+	 * @param id the name of a Task
+	 * @return true if the Task has completed, in this run or a previous one
+	 */
+	public synchronized boolean isCompleted(String id) {
+		return completed.containsKey(id);
+	}
+	
+	/**
+	 * @return The number of Tasks that have completed, in this run or previous ones
+	 */
+	public synchronized int completedCount() {
+		return completed.size();
+	}
+	
+	/**
+	 * Forces every record written so far to disk
+	 */
+	public synchronized void sync() {
+		if (map != null) map.force();
+		unsynced = 0;
+	}
+	
+	/**
+	 * Rewrites the journal with a single record per completed Task, dropping duplicates and unused space.
+	 * @throws IOException if the journal can't be rewritten
+	 */
+	public synchronized void compact() throws IOException {
+		Path tmp = journal.resolveSibling(journal.getFileName() + ".compact");
+		try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER).putInt(MAGIC);
+			header.flip();
+			out.write(header);
+			for (Map.Entry<String, T> entry : completed.entrySet()) {
+				ByteBuffer record = encode(entry.getKey(), entry.getValue());
+				while (record.hasRemaining()) out.write(record);
+			}
+			out.force(true);
+		}
+		closeJournal();
+		Files.move(tmp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		open();
+	}
+	
+	/**
+	 * Forces the journal to disk and closes it
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		closeJournal();
+	}
+	
+	private void closeJournal() throws IOException {
+		sync();
+		map = null;
+		if (channel != null) channel.close();
+		channel = null;
+	}
+	
+	/**
+	 * Opens the journal, replays any existing records, and maps space after the last one for new records
+	 */
+	private void open() throws IOException {
+		channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		long size = channel.size();
+		long end = HEADER;
+		if (size == 0) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER).putInt(MAGIC);
+			header.flip();
+			channel.write(header, 0);
+		} else {
+			ByteBuffer existing = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (size < HEADER || existing.getInt(0) != MAGIC) {
+				channel.close();
+				throw new IOException(journal + " is not a task journal");
+			}
+			end = replay(existing);
+		}
+		remap(end, CHUNK);
+	}
+	
+	/**
+	 * Reads records until the end of the journal, or until a record that was only partially written
+	 * @return The position after the last complete record
+	 */
+	private long replay(ByteBuffer existing) {
+		CRC32 crc = new CRC32();
+		int pos = HEADER;
+		while (existing.limit() - pos >= RECORD_HEADER) {
+			int length = existing.getInt(pos);
+			if (length <= 0 || existing.limit() - pos - RECORD_HEADER < length) break;
+			ByteBuffer payload = existing.duplicate();
+			payload.limit(pos + RECORD_HEADER + length);
+			payload.position(pos + RECORD_HEADER);
+			crc.reset();
+			crc.update(payload.duplicate());
+			if ((int) crc.getValue() != existing.getInt(pos + Integer.BYTES)) break;
+			
+			byte[] id = new byte[payload.getInt()];
+			payload.get(id);
+			int valueLength = payload.getInt();
+			T value = null;
+			if (valueLength >= 0) {
+				payload.limit(payload.position() + valueLength);
+				value = codec.decode(payload);
+			}
+			completed.put(new String(id, StandardCharsets.UTF_8), value);
+			pos += RECORD_HEADER + length;
+		}
+		return pos;
+	}
+	
+	private synchronized void record(String id, T t) {
+		if (channel == null) throw new IllegalStateException("DurableTaskGroup is closed");
+		ByteBuffer record = encode(id, t);
+		if (map.remaining() < record.remaining()) {
+			map.force();
+			remap(mapStart + map.position(), Math.max(CHUNK, record.remaining()));
+		}
+		map.put(record);
+		completed.put(id, t);
+		if (++unsynced >= syncEvery) sync();
+	}
+	
+	private void remap(long start, int capacity) {
+		try {
+			map = channel.map(FileChannel.MapMode.READ_WRITE, start, capacity);
+			mapStart = start;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Encodes a record into the scratch buffer
+	 * @return The scratch buffer, flipped for reading
+	 */
+	private ByteBuffer encode(String id, T t) {
+		byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+		for (;;) {
+			scratch.clear();
+			try {
+				scratch.position(RECORD_HEADER);
+				scratch.putInt(idBytes.length).put(idBytes);
+				if (t == null) {
+					scratch.putInt(-1);
+				} else {
+					int lengthAt = scratch.position();
+					scratch.putInt(0);
+					codec.encode(t, scratch);
+					scratch.putInt(lengthAt, scratch.position() - lengthAt - Integer.BYTES);
+				}
+				break;
+			} catch (BufferOverflowException e) {
+				scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+			}
+		}
+		scratch.flip();
+		ByteBuffer payload = scratch.duplicate();
+		payload.position(RECORD_HEADER);
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		scratch.putInt(0, scratch.limit() - RECORD_HEADER);
+		scratch.putInt(Integer.BYTES, (int) crc.getValue());
+		return scratch;
+	}
+}
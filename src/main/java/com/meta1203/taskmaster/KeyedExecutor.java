@@ -0,0 +1,101 @@
+package com.meta1203.taskmaster;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs work for the same key one at a time, in the order it was submitted, while work for different keys runs in parallel.
+ * <p>
+ * Each key with pending work has a serial queue, drained by a single runnable on the delegate {@link Executor}.
+ * Enqueueing is lock-free. Once a queue is drained it retires itself and is removed, so idle keys hold no memory.
+ */
+class KeyedExecutor {
+	private static final int BATCH = 64;
+	
+	private Executor delegate;
+	private ConcurrentHashMap<Object, SerialQueue> queues = new ConcurrentHashMap<>();
+	
+	public KeyedExecutor(Executor delegate) {
+		this.delegate = delegate;
+	}
+	
+	public void execute(Object key, Runnable r) {
+		for (;;) {
+			SerialQueue q = queues.get(key);
+			if (q == null) {
+				SerialQueue fresh = new SerialQueue(key);
+				q = queues.putIfAbsent(key, fresh);
+				if (q == null) q = fresh;
+			}
+			if (q.enqueue(r)) return;
+			queues.remove(key, q); // retired while we were looking at it
+		}
+	}
+	
+	/**
+	 * @return The number of keys with pending or running work
+	 */
+	public int activeKeys() {
+		return queues.size();
+	}
+	
+	private class SerialQueue implements Runnable {
+		private Object key;
+		private ConcurrentLinkedQueue<Runnable> work = new ConcurrentLinkedQueue<>();
+		// the number of runnables submitted but not yet finished, or -1 once retired
+		private AtomicInteger count = new AtomicInteger();
+		
+		public SerialQueue(Object key) {
+			this.key = key;
+		}
+		
+		public boolean enqueue(Runnable r) {
+			for (;;) {
+				int c = count.get();
+				if (c < 0) return false;
+				if (count.compareAndSet(c, c + 1)) {
+					work.add(r);
+					if (c == 0) delegate.execute(this);
+					return true;
+				}
+			}
+		}
+		
+		@Override
+		public void run() {
+			for (int x = 0; x < BATCH; x++) {
+				Runnable r;
+				while ((r = work.poll()) == null) {
+					Thread.onSpinWait(); // counted, but the submitter hasn't added it yet
+				}
+				try {
+					r.run();
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+				if (finished()) return;
+			}
+			// there is more work for this key, but let other keys have a turn
+			delegate.execute(this);
+		}
+		
+		/**
+		 * @return true if that was the last runnable, in which case the queue has been retired
+		 */
+		private boolean finished() {
+			for (;;) {
+				int c = count.get();
+				if (c == 1) {
+					if (count.compareAndSet(1, -1)) {
+						queues.remove(key, this);
+						return true;
+					}
+				} else if (count.compareAndSet(c, c - 1)) {
+					return false;
+				}
+			}
+		}
+	}
+}
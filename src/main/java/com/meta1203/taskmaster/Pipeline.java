@@ -0,0 +1,64 @@
+package com.meta1203.taskmaster;
+
+import java.util.function.Function;
+
+/**
+ * A chain of stages fused into a single {@link Function}, built with {@link Task#pipeline(Function)}.
+ * <p>
+ * Unlike chaining {@link Task#then(Function)}, each item run through a built Pipeline is scheduled once and
+ * produces a single Task, no matter how many stages the Pipeline has.
+ *
+ * @param <I> the type of items entering the Pipeline
+ * @param <O> the type of items produced by the Pipeline
+ */
+public class Pipeline<I, O> {
+	private Function<I, O> f;
+	
+	Pipeline(Function<I, O> f) {
+		this.f = f;
+	}
+	
+	/**
+	 * Adds a stage to the end of the Pipeline
+	 * @param <R> The type {@link Function} next returns
+	 * @param next The {@link Function} that accepts the output of the previous stage and returns a new value
+	 * @return A new Pipeline ending with the given stage
+	 */
+	public <R> Pipeline<I, R> then(Function<O, R> next) {
+		Function<I, O> prev = f;
+		return new Pipeline<>(i -> next.apply(prev.apply(i)));
+	}
+	
+	/**
+	 * Adds an exception handler for every stage before it, like {@link Task#handle(Function)}.
+	 * @param handler A {@link Function} that turns an exception thrown by a previous stage into a value
+	 * @return A new Pipeline ending with the given handler
+	 */
+	public Pipeline<I, O> handle(Function<Throwable, O> handler) {
+		Function<I, O> prev = f;
+		return new Pipeline<>(i -> {
+			try {
+				return prev.apply(i);
+			} catch (Throwable e) {
+				return handler.apply(e);
+			}
+		});
+	}
+	
+	/**
+	 * @return A {@link Function} that runs every stage of the Pipeline over an item as a single Task
+	 */
+	public Function<I, Task<O>> build() {
+		Function<I, O> fused = f;
+		return i -> Task.execute(() -> fused.apply(i));
+	}
+	
+	/**
+	 * @param p The {@link Priority} to run each item at
+	 * @return A {@link Function} that runs every stage of the Pipeline over an item as a single prioritized Task
+	 */
+	public Function<I, Task<O>> build(Priority p) {
+		Function<I, O> fused = f;
+		return i -> Task.execute(p, () -> fused.apply(i));
+	}
+}
@@ -0,0 +1,14 @@
+package com.meta1203.taskmaster;
+
+/**
+ * Priority classes for {@link Task#execute(Priority, java.util.function.Supplier)}.
+ * <p>
+ * Prioritized Tasks, and anything chained onto them, are queued by priority before being handed to the Task executor.
+ * Tasks created with {@link Task#execute(java.util.function.Supplier)} and continuations of Tasks created without a
+ * priority are queued at NORMAL, so HIGH work is picked ahead of them without bulk work having to opt into LOW.
+ */
+public enum Priority {
+	LOW,
+	NORMAL,
+	HIGH
+}
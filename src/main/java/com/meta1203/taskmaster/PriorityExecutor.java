@@ -0,0 +1,89 @@
+package com.meta1203.taskmaster;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Feeds work to a delegate {@link Executor} from one queue per {@link Priority}.
+ * <p>
+ * Every piece of work queued hands the delegate one dispatch, which runs the highest priority work available
+ * when it starts rather than the work it was queued with. Each dispatch runs exactly one piece of work, so work
+ * that blocks (such as awaiting another prioritized Task) only holds up its own thread, and the delegate is free
+ * to add threads around it. Work that has waited longer than the starvation threshold is taken first regardless
+ * of priority, so a steady stream of high priority work can't hold back everything else forever.
+ */
+class PriorityExecutor {
+	private Executor delegate;
+	private long starvationNanos;
+	private ConcurrentLinkedQueue<Entry>[] queues;
+	private Executor[] views;
+	
+	@SuppressWarnings("unchecked")
+	public PriorityExecutor(Executor delegate, long starvationNanos) {
+		this.delegate = delegate;
+		this.starvationNanos = starvationNanos;
+		Priority[] priorities = Priority.values();
+		this.queues = (ConcurrentLinkedQueue<Entry>[]) new ConcurrentLinkedQueue<?>[priorities.length];
+		this.views = new Executor[priorities.length];
+		for (Priority p : priorities) {
+			queues[p.ordinal()] = new ConcurrentLinkedQueue<>();
+			views[p.ordinal()] = r -> execute(p, r);
+		}
+	}
+	
+	/**
+	 * @return An {@link Executor} that queues everything it is given at the given priority
+	 */
+	public Executor forPriority(Priority p) {
+		return views[p.ordinal()];
+	}
+	
+	public void execute(Priority p, Runnable r) {
+		Entry e = new Entry(r, System.nanoTime());
+		queues[p.ordinal()].add(e);
+		try {
+			delegate.execute(this::dispatch);
+		} catch (RuntimeException ex) {
+			queues[p.ordinal()].remove(e);
+			throw ex;
+		}
+	}
+	
+	private void dispatch() {
+		// there is one dispatch per entry, so this only finds nothing if the entry was removed after a rejection
+		Entry e = poll();
+		if (e != null) e.r.run();
+	}
+	
+	private Entry poll() {
+		long now = System.nanoTime();
+		Entry starved = null;
+		int from = -1;
+		for (int x = 0; x < queues.length - 1; x++) {
+			Entry head = queues[x].peek();
+			if (head != null && now - head.queued > starvationNanos && (starved == null || head.queued < starved.queued)) {
+				starved = head;
+				from = x;
+			}
+		}
+		if (starved != null) {
+			Entry e = queues[from].poll();
+			if (e != null) return e;
+		}
+		for (int x = queues.length - 1; x >= 0; x--) {
+			Entry e = queues[x].poll();
+			if (e != null) return e;
+		}
+		return null;
+	}
+	
+	private static class Entry {
+		private Runnable r;
+		private long queued;
+		
+		public Entry(Runnable r, long queued) {
+			this.r = r;
+			this.queued = queued;
+		}
+	}
+}
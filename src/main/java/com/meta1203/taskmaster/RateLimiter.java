@@ -0,0 +1,97 @@
+package com.meta1203.taskmaster;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free token bucket for use with {@link Task#rateLimited(RateLimiter, java.util.function.Supplier)}.
+ * <p>
+ * Up to <code>burst</code> Tasks may start immediately, after which Tasks are spaced out to the configured rate.
+ * Tasks over the rate are scheduled to start later rather than blocking a thread, and Tasks that would have to wait
+ * longer than the maximum delay are rejected instead.
+ */
+public class RateLimiter {
+	private long intervalNanos;
+	private long toleranceNanos;
+	private long maxDelayNanos;
+	private AtomicLong theoreticalArrival;
+	
+	private AtomicLong queued = new AtomicLong();
+	private LongAdder admitted = new LongAdder();
+	private LongAdder rejected = new LongAdder();
+	
+	/**
+	 * Creates a new RateLimiter that never rejects Tasks
+	 * @param permitsPerSecond the sustained number of Tasks allowed to start per second
+	 * @param burst the number of Tasks allowed to start at once after the limiter has been idle
+	 */
+	public RateLimiter(double permitsPerSecond, int burst) {
+		this(permitsPerSecond, burst, null);
+	}
+	
+	/**
+	 * Creates a new RateLimiter
+	 * @param permitsPerSecond the sustained number of Tasks allowed to start per second
+	 * @param burst the number of Tasks allowed to start at once after the limiter has been idle
+	 * @param maxDelay the longest a Task may be scheduled into the future before it is rejected, or null for no limit
+	 */
+	public RateLimiter(double permitsPerSecond, int burst, Duration maxDelay) {
+		if (permitsPerSecond <= 0) throw new IllegalArgumentException("permitsPerSecond must be positive");
+		if (burst < 1) throw new IllegalArgumentException("burst must be at least 1");
+		this.intervalNanos = Math.max(1, (long) (1_000_000_000d / permitsPerSecond));
+		this.toleranceNanos = intervalNanos * (burst - 1);
+		this.maxDelayNanos = maxDelay == null ? Long.MAX_VALUE : maxDelay.toNanos();
+		this.theoreticalArrival = new AtomicLong(System.nanoTime() - toleranceNanos);
+	}
+	
+	/**
+	 * Reserves a permit.
+	 * @return How many nanoseconds to wait before using the permit, or -1 if the permit was rejected
+	 */
+	long reserve() {
+		for (;;) {
+			long now = System.nanoTime();
+			long tat = theoreticalArrival.get();
+			long base = tat - now > 0 ? tat : now;
+			long delay = Math.max(0, base - toleranceNanos - now);
+			if (delay > maxDelayNanos) {
+				rejected.increment();
+				return -1;
+			}
+			if (theoreticalArrival.compareAndSet(tat, base + intervalNanos)) {
+				admitted.increment();
+				if (delay > 0) queued.incrementAndGet();
+				return delay;
+			}
+		}
+	}
+	
+	/**
+	 * Called once when a delayed Task starts running, or is cancelled before it starts
+	 */
+	void dequeued() {
+		queued.decrementAndGet();
+	}
+	
+	/**
+	 * @return The number of Tasks currently scheduled to start later
+	 */
+	public long getQueued() {
+		return queued.get();
+	}
+	
+	/**
+	 * @return The total number of Tasks admitted, whether started immediately or scheduled for later
+	 */
+	public long getAdmitted() {
+		return admitted.sum();
+	}
+	
+	/**
+	 * @return The total number of Tasks rejected for exceeding the maximum delay
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+}
@@ -0,0 +1,360 @@
+package com.meta1203.taskmaster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs {@link SerializableSupplier}s in a pool of worker JVMs on the same machine, so a batch can use more
+ * memory and garbage collectors than a single JVM has.
+ * <p>
+ * Each worker is a child JVM started with this JVM's classpath, which connects back over a loopback socket
+ * and proves it was started by this executor with a random token. Suppliers and their results are sent with
+ * Java serialization, so everything a supplier captures and returns must be serializable. A supplier that
+ * throws completes its Task with the same exception, so groups of remote Tasks can be awaited with
+ * {@link Task#awaitAllUnsafe(java.util.Collection)} and report a {@link MultiException} like local ones.
+ * <p>
+ * Every worker runs one supplier at a time. New suppliers are spread over the workers' queues, and a worker
+ * whose own queue is empty steals from the back of another's. If a worker process dies, the supplier it was
+ * running fails with an {@link UncheckedIOException} and the worker is restarted. A supplier that the worker
+ * died before receiving is sent again to the restarted worker instead, since it never started.
+ */
+public class RemoteTaskExecutor implements Closeable {
+	private static final long CONNECT_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+	
+	private List<String> command = new ArrayList<>();
+	private String token;
+	private ServerSocket server;
+	private Worker[] workers;
+	private Semaphore queued = new Semaphore(0);
+	private AtomicInteger next = new AtomicInteger();
+	private LongAdder restarts = new LongAdder();
+	private volatile boolean closed;
+	
+	/**
+	 * Starts the given number of worker JVMs with default JVM options
+	 * @param workers the number of worker JVMs
+	 * @throws IOException if the executor can't listen for workers
+	 */
+	public RemoteTaskExecutor(int workers) throws IOException {
+		this(workers, Collections.emptyList());
+	}
+	
+	/**
+	 * Starts the given number of worker JVMs
+	 * @param workers the number of worker JVMs
+	 * @param jvmOptions options passed to every worker JVM, such as "-Xmx4g"
+	 * @throws IOException if the executor can't listen for workers
+	 */
+	public RemoteTaskExecutor(int workers, List<String> jvmOptions) throws IOException {
+		if (workers < 1) throw new IllegalArgumentException("Illegal worker count: " + workers);
+		byte[] secret = new byte[16];
+		new SecureRandom().nextBytes(secret);
+		StringBuilder sb = new StringBuilder();
+		for (byte b : secret) sb.append(String.format("%02x", b));
+		this.token = sb.toString();
+		this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(jvmOptions);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(RemoteWorker.class.getName());
+		command.add(Integer.toString(server.getLocalPort()));
+		
+		this.workers = new Worker[workers];
+		for (int x = 0; x < workers; x++) {
+			this.workers[x] = new Worker(x);
+		}
+		// started after the workers exist, so the acceptor sees them
+		Thread acceptor = new Thread(this::accept, "taskmaster-remote-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		for (Worker w : this.workers) {
+			w.thread.start();
+		}
+	}
+	
+	/**
+	 * Runs the given supplier in one of the worker JVMs
+	 * @param <T> The type returned by s
+	 * @param s The supplier to run, which must be serializable
+	 * @return A new Task containing the result of s, or the exception it threw
+	 */
+	public <T> Task<T> submit(SerializableSupplier<T> s) {
+		CompletableFuture<T> cf = new CompletableFuture<>();
+		if (closed) {
+			cf.completeExceptionally(new RejectedExecutionException("Executor is closed"));
+			return new Task<T>(cf);
+		}
+		byte[] payload;
+		try {
+			payload = RemoteWorker.serialize(s);
+		} catch (IOException e) {
+			cf.completeExceptionally(e);
+			return new Task<T>(cf);
+		}
+		@SuppressWarnings("unchecked")
+		Job job = new Job((CompletableFuture<Object>) cf, payload);
+		workers[Math.floorMod(next.getAndIncrement(), workers.length)].jobs.addLast(job);
+		queued.release();
+		if (closed) rejectQueued();
+		return new Task<T>(cf);
+	}
+	
+	/**
+	 * @return How many times a worker JVM has been restarted after it died
+	 */
+	public long getRestartCount() {
+		return restarts.sum();
+	}
+	
+	/**
+	 * Stops every worker JVM. Suppliers that haven't finished fail with a {@link RejectedExecutionException}.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		server.close();
+		for (Worker w : workers) {
+			w.thread.interrupt();
+			w.disconnect();
+		}
+		rejectQueued();
+	}
+	
+	private void rejectQueued() {
+		for (Worker w : workers) {
+			Job job;
+			while ((job = w.jobs.pollFirst()) != null) {
+				job.cf.completeExceptionally(new RejectedExecutionException("Executor is closed"));
+			}
+		}
+	}
+	
+	/**
+	 * Hands each connecting worker to the slot that started it, once it has sent the right token
+	 */
+	private void accept() {
+		byte[] expected = token.getBytes(StandardCharsets.UTF_8);
+		while (!closed) {
+			Socket socket;
+			try {
+				socket = server.accept();
+			} catch (IOException e) {
+				return;
+			}
+			try {
+				socket.setSoTimeout((int) CONNECT_TIMEOUT);
+				DataInputStream in = new DataInputStream(socket.getInputStream());
+				byte[] t = in.readUTF().getBytes(StandardCharsets.UTF_8);
+				int slot = in.readInt();
+				socket.setSoTimeout(0);
+				if (MessageDigest.isEqual(expected, t) && slot >= 0 && slot < workers.length
+						&& workers[slot].connecting.complete(socket)) continue;
+				socket.close();
+			} catch (IOException e) {
+				try {
+					socket.close();
+				} catch (IOException e1) {}
+			}
+		}
+	}
+	
+	private static class Job {
+		private CompletableFuture<Object> cf;
+		private byte[] payload;
+		
+		public Job(CompletableFuture<Object> cf, byte[] payload) {
+			this.cf = cf;
+			this.payload = payload;
+		}
+	}
+	
+	private class Worker {
+		private int slot;
+		private Thread thread;
+		private Deque<Job> jobs = new ConcurrentLinkedDeque<>();
+		private volatile CompletableFuture<Socket> connecting = new CompletableFuture<>();
+		private volatile Process process;
+		private volatile Socket socket;
+		private DataInputStream in;
+		private DataOutputStream out;
+		
+		public Worker(int slot) {
+			this.slot = slot;
+			this.thread = new Thread(this::run, "taskmaster-remote-" + slot);
+			thread.setDaemon(true);
+		}
+		
+		private void run() {
+			try {
+				connect();
+			} catch (IOException e) {
+				// tried again when the first supplier arrives
+			}
+			while (!closed) {
+				Job job;
+				try {
+					job = take();
+				} catch (InterruptedException e) {
+					break;
+				}
+				if (job == null) break;
+				if (job.cf.isDone()) continue;
+				send(job);
+			}
+			disconnect();
+		}
+		
+		/**
+		 * Runs a supplier on this worker. If the worker turns out to have died before acknowledging the supplier,
+		 * it is restarted and the supplier is sent once more, so a worker that died while idle doesn't fail it.
+		 */
+		private void send(Job job) {
+			for (int attempt = 0;; attempt++) {
+				boolean received = false;
+				try {
+					Process p = process;
+					if (p != null && !p.isAlive()) {
+						disconnect();
+						restarts.increment();
+					}
+					if (process == null) connect();
+					out.writeInt(job.payload.length);
+					out.write(job.payload);
+					out.flush();
+					in.readByte();
+					received = true;
+					boolean ok = in.readBoolean();
+					byte[] reply = new byte[in.readInt()];
+					in.readFully(reply);
+					complete(job, ok, reply);
+					return;
+				} catch (IOException e) {
+					if (closed) {
+						job.cf.completeExceptionally(new RejectedExecutionException("Executor is closed"));
+						return;
+					}
+					String crash = describe();
+					boolean started = process != null;
+					disconnect();
+					if (started) restarts.increment();
+					if (received || attempt > 0) {
+						job.cf.completeExceptionally(new UncheckedIOException(crash, e));
+						try {
+							connect();
+						} catch (IOException e1) {}
+						return;
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Takes the next supplier from this worker's queue, or steals the newest from another's.
+		 * Every queued supplier has a permit, so once one is acquired a supplier is guaranteed to be in some queue.
+		 */
+		private Job take() throws InterruptedException {
+			queued.acquire();
+			for (;;) {
+				Job job = jobs.pollFirst();
+				if (job != null) return job;
+				for (int x = 1; x < workers.length; x++) {
+					job = workers[(slot + x) % workers.length].jobs.pollLast();
+					if (job != null) return job;
+				}
+				if (closed) return null;
+				Thread.onSpinWait();
+			}
+		}
+		
+		private void complete(Job job, boolean ok, byte[] reply) {
+			Object result;
+			try {
+				result = RemoteWorker.deserialize(reply);
+			} catch (IOException | ClassNotFoundException e) {
+				job.cf.completeExceptionally(e);
+				return;
+			}
+			if (ok) {
+				job.cf.complete(result);
+			} else {
+				job.cf.completeExceptionally((Throwable) result);
+			}
+		}
+		
+		private void connect() throws IOException {
+			CompletableFuture<Socket> c = new CompletableFuture<>();
+			connecting = c;
+			List<String> cmd = new ArrayList<>(command);
+			cmd.add(Integer.toString(slot));
+			ProcessBuilder pb = new ProcessBuilder(cmd).inheritIO();
+			pb.environment().put(RemoteWorker.TOKEN, token);
+			Process p = pb.start();
+			process = p;
+			p.onExit().thenRun(() -> c.completeExceptionally(new IOException("Worker exited with code " + p.exitValue())));
+			try {
+				Socket s = c.get(CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
+				socket = s;
+				in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+				out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+			} catch (ExecutionException e) {
+				disconnect();
+				throw new IOException("Worker " + slot + " failed to start", e.getCause());
+			} catch (InterruptedException | TimeoutException e) {
+				disconnect();
+				throw new IOException("Worker " + slot + " didn't connect", e);
+			}
+			if (closed) disconnect();
+		}
+		
+		private String describe() {
+			Process p = process;
+			try {
+				if (p != null && p.waitFor(1, TimeUnit.SECONDS)) return "Worker " + slot + " exited with code " + p.exitValue();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "Lost connection to worker " + slot;
+		}
+		
+		private void disconnect() {
+			Socket s = socket;
+			socket = null;
+			if (s != null) {
+				try {
+					s.close();
+				} catch (IOException e) {}
+			}
+			Process p = process;
+			process = null;
+			if (p != null) p.destroyForcibly();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.meta1203.taskmaster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * The main class of the worker JVMs started by {@link RemoteTaskExecutor}.
+ * <p>
+ * A worker connects back to the executor on the loopback port it was given, identifies itself with the
+ * executor's token and its slot, then runs one {@link SerializableSupplier} at a time until the connection closes.
+ * Every message is a length-prefixed serialized object. A worker acknowledges each supplier with a single byte
+ * as soon as it has been read, and its reply is preceded by whether the supplier succeeded.
+ */
+final class RemoteWorker {
+	static final String TOKEN = "TASKMASTER_WORKER_TOKEN";
+	
+	private RemoteWorker() {}
+	
+	public static void main(String[] args) throws IOException {
+		int port = Integer.parseInt(args[0]);
+		int slot = Integer.parseInt(args[1]);
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeUTF(System.getenv(TOKEN));
+			out.writeInt(slot);
+			out.flush();
+			
+			for (;;) {
+				byte[] request;
+				try {
+					request = new byte[in.readInt()];
+				} catch (EOFException e) {
+					break;
+				}
+				in.readFully(request);
+				out.writeByte(0);
+				out.flush();
+				
+				boolean ok;
+				Object result;
+				try {
+					result = ((SerializableSupplier<?>) deserialize(request)).get();
+					ok = true;
+				} catch (Throwable e) {
+					result = e;
+					ok = false;
+				}
+				byte[] reply;
+				try {
+					reply = serialize(result);
+				} catch (IOException e) {
+					ok = false;
+					reply = serialize(new IOException("Couldn't return " + result, e));
+				}
+				out.writeBoolean(ok);
+				out.writeInt(reply.length);
+				out.write(reply);
+				out.flush();
+			}
+		}
+		// Suppliers may have left non-daemon threads running
+		System.exit(0);
+	}
+	
+	static byte[] serialize(Object o) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(o);
+		}
+		return bytes.toByteArray();
+	}
+	
+	static Object deserialize(byte[] b) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(b))) {
+			return in.readObject();
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package com.meta1203.taskmaster;
+
+import java.io.Serializable;
+import java.util.function.Supplier;
+
+/**
+ * A {@link Supplier} that can be sent to another JVM by a {@link RemoteTaskExecutor}.
+ * <p>
+ * Lambdas assigned to this type are serializable, as long as everything they capture is.
+ *
+ * @param <T> the type of results supplied by this supplier
+ */
+@FunctionalInterface
+public interface SerializableSupplier<T> extends Supplier<T>, Serializable {
+}
@@ -1,15 +1,41 @@
 package com.meta1203.taskmaster;
 
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.meta1203.taskmaster.collections.RingBuffer;
 
 /**
  * @author Hunter Hancock
@@ -18,6 +44,10 @@ import java.util.function.Supplier;
  */
 public class Task<T> {
 	private static Executor ex = Executors.newWorkStealingPool();
+	private static PriorityExecutor prioritized = new PriorityExecutor(r -> ex.execute(r), TimeUnit.MILLISECONDS.toNanos(100));
+	private static WheelTimer timer = new WheelTimer(TimeUnit.MILLISECONDS.toNanos(10), 512);
+	private static KeyedExecutor keyed = new KeyedExecutor(r -> ex.execute(r));
+	private static LongAdder blockingAwaits = new LongAdder();
 	
 	/**
 	 * Override the default Executor for all new Tasks.
@@ -30,22 +60,453 @@ public class Task<T> {
 	}
 	
 	private CompletableFuture<T> cf;
+	private Priority priority;
+	private long chain;
+	
+	Task(CompletableFuture<T> cf) {
+		this(cf, null);
+	}
 	
-	private Task(CompletableFuture<T> cf) {
+	Task(CompletableFuture<T> cf, Priority priority) {
+		this(cf, priority, 0);
+	}
+	
+	Task(CompletableFuture<T> cf, Priority priority, long chain) {
 		this.cf = cf;
+		this.priority = priority;
+		this.chain = chain;
+	}
+	
+	/**
+	 * @return The flight recorder chain id for Tasks chained onto this one
+	 */
+	private long continuation() {
+		return chain != 0 ? chain : TaskEvents.newChain();
+	}
+	
+	/**
+	 * @return The {@link Executor} continuations of this Task should run on
+	 */
+	private Executor executor() {
+		return prioritized.forPriority(priority == null ? Priority.NORMAL : priority);
 	}
 	
 	/**
-	 * Creates a new Task with given {@link Supplier}
+	 * Creates a new Task with given {@link Supplier}, at {@link Priority#NORMAL}
 	 * @param <T> The type returned by s
 	 * @param s The provided {@link Supplier} to execute
 	 */
 	public static <T> Task<T> execute(Supplier<T> s) {
-		return new Task<T>(CompletableFuture.supplyAsync(s, ex));
+		return execute(Priority.NORMAL, s);
 	}
 	
 	public static Task<Void> execute(Runnable r) {
-		return new Task<Void>(CompletableFuture.runAsync(r, ex));
+		return execute(Priority.NORMAL, r);
+	}
+	
+	/**
+	 * Creates a new Task with given {@link Supplier}, queued ahead of lower priority work.
+	 * <p>
+	 * Tasks chained onto the returned Task with then() or handle() inherit its priority.
+	 * @param <T> The type returned by s
+	 * @param p The {@link Priority} of the Task
+	 * @param s The provided {@link Supplier} to execute
+	 */
+	public static <T> Task<T> execute(Priority p, Supplier<T> s) {
+		long c = TaskEvents.newChain();
+		return new Task<T>(CompletableFuture.supplyAsync(TaskEvents.wrap(c, "execute", s), prioritized.forPriority(p)), p, c);
+	}
+	
+	/**
+	 * Creates a new Task with given {@link Runnable}, queued ahead of lower priority work.
+	 * <p>
+	 * Tasks chained onto the returned Task with then() or handle() inherit its priority.
+	 * @param p The {@link Priority} of the Task
+	 * @param r The provided {@link Runnable} to execute
+	 */
+	public static Task<Void> execute(Priority p, Runnable r) {
+		long c = TaskEvents.newChain();
+		return new Task<Void>(CompletableFuture.runAsync(TaskEvents.wrap(c, "execute", r), prioritized.forPriority(p)), p, c);
+	}
+	
+	/**
+	 * Creates a new Task with given {@link Supplier}, run after every Task previously submitted with the same key.
+	 * <p>
+	 * Tasks with the same key run one at a time, in the order they were submitted, without holding a thread while
+	 * they wait. Tasks with different keys run in parallel. Keys are compared with equals().
+	 * @param <K> The type of the key
+	 * @param <T> The type returned by s
+	 * @param key The key to order the Task by
+	 * @param s The provided {@link Supplier} to execute
+	 */
+	public static <K, T> Task<T> executeKeyed(K key, Supplier<T> s) {
+		long c = TaskEvents.newChain();
+		return new Task<T>(CompletableFuture.supplyAsync(TaskEvents.wrap(c, "keyed", s), r -> keyed.execute(key, r)), null, c);
+	}
+	
+	/**
+	 * Creates a new Task with given {@link Runnable}, run after every Task previously submitted with the same key.
+	 * @see #executeKeyed(Object, Supplier)
+	 * @param <K> The type of the key
+	 * @param key The key to order the Task by
+	 * @param r The provided {@link Runnable} to execute
+	 */
+	public static <K> Task<Void> executeKeyed(K key, Runnable r) {
+		long c = TaskEvents.newChain();
+		return new Task<Void>(CompletableFuture.runAsync(TaskEvents.wrap(c, "keyed", r), run -> keyed.execute(key, run)), null, c);
+	}
+	
+	/**
+	 * Creates a new Task with given {@link Supplier}, started no faster than the given {@link RateLimiter} allows.
+	 * <p>
+	 * If the rate has been exceeded, the Task is scheduled to start once a permit is available instead of
+	 * occupying a thread while it waits. If it would have to wait longer than the limiter's maximum delay,
+	 * the Task fails with a {@link RejectedExecutionException}.
+	 * @param <T> The type returned by s
+	 * @param rl The {@link RateLimiter} to take a permit from
+	 * @param s The provided {@link Supplier} to execute
+	 */
+	public static <T> Task<T> rateLimited(RateLimiter rl, Supplier<T> s) {
+		long delay = rl.reserve();
+		if (delay < 0) return new Task<T>(CompletableFuture.failedFuture(new RejectedExecutionException("Rate limit exceeded")));
+		long c = TaskEvents.newChain();
+		Supplier<T> traced = TaskEvents.wrap(c, "rateLimited", s);
+		if (delay == 0) return new Task<T>(CompletableFuture.supplyAsync(traced, ex), null, c);
+		
+		// a delayed Task leaves the queue when it starts, or when it is cancelled before it gets the chance
+		CompletableFuture<T> cf = new CompletableFuture<>();
+		AtomicBoolean waiting = new AtomicBoolean(true);
+		Runnable dequeue = () -> {
+			if (waiting.compareAndSet(true, false)) rl.dequeued();
+		};
+		WheelTimer.Timeout timeout = timer.schedule(delay, ex, () -> {
+			dequeue.run();
+			if (cf.isDone()) return;
+			try {
+				cf.complete(traced.get());
+			} catch (Throwable e) {
+				cf.completeExceptionally(e);
+			}
+		});
+		cf.whenComplete((t, e) -> {
+			dequeue.run();
+			if (cf.isCancelled()) timeout.cancel();
+		});
+		return new Task<T>(cf, null, c);
+	}
+	
+	/**
+	 * Creates a new Task with given {@link Runnable}, started no faster than the given {@link RateLimiter} allows.
+	 * @see #rateLimited(RateLimiter, Supplier)
+	 * @param rl The {@link RateLimiter} to take a permit from
+	 * @param r The provided {@link Runnable} to execute
+	 */
+	public static Task<Void> rateLimited(RateLimiter rl, Runnable r) {
+		return rateLimited(rl, () -> {
+			r.run();
+			return null;
+		});
+	}
+	
+	/**
+	 * Solves a problem by recursively splitting it into smaller problems, run on a {@link ForkJoinPool}.
+	 * <p>
+	 * Uses the Task executor if it is a ForkJoinPool (the default is), otherwise the common pool.
+	 * Sub-problems are forked while there are idle workers to steal them, and solved sequentially once there aren't.
+	 * Results are merged in the order split returned them.
+	 * @param <P> The type of problem
+	 * @param <R> The type of result
+	 * @param problem The problem to solve
+	 * @param isSmall Tests if a problem is small enough to solve directly
+	 * @param solve Solves a small problem
+	 * @param split Splits a problem that isn't small into smaller problems
+	 * @param merge Combines the results of two adjacent problems
+	 * @return A new Task containing the merged result
+	 */
+	public static <P, R> Task<R> divide(P problem, Predicate<P> isSmall, Function<P, R> solve, Function<P, List<P>> split, BinaryOperator<R> merge) {
+		ForkJoinPool pool = ex instanceof ForkJoinPool ? (ForkJoinPool) ex : ForkJoinPool.commonPool();
+		DivideTask<P, R> root = new DivideTask<>(problem, isSmall, solve, split, merge);
+		CompletableFuture<R> cf = new CompletableFuture<>();
+		pool.execute(() -> {
+			try {
+				cf.complete(root.invoke());
+			} catch (Throwable e) {
+				cf.completeExceptionally(e);
+			}
+		});
+		return new Task<R>(cf);
+	}
+	
+	/**
+	 * Reduces the given items in parallel, like {@link Stream#reduce(Object, BiFunction, BinaryOperator)}.
+	 * <p>
+	 * The items are copied into an array and split into ranges with {@link #divide}. Each range is folded into its
+	 * own result starting from identity, so workers never write to shared state, and the partial results are
+	 * combined pairwise as the ranges are joined.
+	 * @param <T> The type of item
+	 * @param <U> The type of result
+	 * @param items The items to reduce
+	 * @param identity The starting result of each range, which must not be modified
+	 * @param accumulator Folds an item into a result
+	 * @param combiner Combines the results of two adjacent ranges
+	 * @return A new Task containing the combined result
+	 */
+	public static <T, U> Task<U> reduce(Collection<T> items, U identity, BiFunction<U, ? super T, U> accumulator, BinaryOperator<U> combiner) {
+		Object[] a = items.toArray();
+		return divideRange(a.length, (from, to) -> {
+			U u = identity;
+			for (int x = from; x < to; x++) {
+				@SuppressWarnings("unchecked")
+				T t = (T) a[x];
+				u = accumulator.apply(u, t);
+			}
+			return u;
+		}, combiner);
+	}
+	
+	/**
+	 * Collects the given items in parallel, like {@link Stream#collect(Collector)}.
+	 * <p>
+	 * Each range gets its own container from the Collector's supplier, the containers are merged with its combiner,
+	 * and the finisher is applied once at the end. See {@link #reduce(Collection, Object, BiFunction, BinaryOperator)}.
+	 * @param <T> The type of item
+	 * @param <A> The Collector's container type
+	 * @param <R> The type of result
+	 * @param items The items to collect
+	 * @param collector The {@link Collector} to collect with
+	 * @return A new Task containing the collected result
+	 */
+	public static <T, A, R> Task<R> collect(Collection<T> items, Collector<? super T, A, R> collector) {
+		Object[] a = items.toArray();
+		BiConsumer<A, ? super T> accumulator = collector.accumulator();
+		Task<A> partial = divideRange(a.length, (from, to) -> {
+			A container = collector.supplier().get();
+			for (int x = from; x < to; x++) {
+				@SuppressWarnings("unchecked")
+				T t = (T) a[x];
+				accumulator.accept(container, t);
+			}
+			return container;
+		}, collector.combiner());
+		return partial.then(collector.finisher());
+	}
+	
+	/**
+	 * Solves the index range [0, size) with divide, in ranges of at least a few hundred indices
+	 * and about four per processor.
+	 */
+	private static <R> Task<R> divideRange(int size, BiFunction<Integer, Integer, R> solve, BinaryOperator<R> merge) {
+		int leaf = Math.max(256, size / (Runtime.getRuntime().availableProcessors() * 4));
+		return divide(new int[] { 0, size }, r -> r[1] - r[0] <= leaf, r -> solve.apply(r[0], r[1]), r -> {
+			int mid = (r[0] + r[1]) >>> 1;
+			return Arrays.asList(new int[] { r[0], mid }, new int[] { mid, r[1] });
+		}, merge);
+	}
+	
+	/**
+	 * Creates a new Task with given {@link Supplier}, started after the given delay.
+	 * <p>
+	 * The delay is measured by a single shared timer with a resolution of 10 milliseconds, which hands the
+	 * Supplier to the Task executor once it is due. Use {@link #cancel()} to stop it from running.
+	 * @param <T> The type returned by s
+	 * @param delay How long to wait before starting the Task
+	 * @param s The provided {@link Supplier} to execute
+	 */
+	public static <T> Task<T> schedule(Duration delay, Supplier<T> s) {
+		CompletableFuture<T> cf = new CompletableFuture<>();
+		long c = TaskEvents.newChain();
+		Supplier<T> traced = TaskEvents.wrap(c, "schedule", s);
+		WheelTimer.Timeout timeout = timer.schedule(delay.toNanos(), ex, () -> {
+			if (cf.isDone()) return;
+			try {
+				cf.complete(traced.get());
+			} catch (Throwable e) {
+				cf.completeExceptionally(e);
+			}
+		});
+		cf.whenComplete((t, e) -> {
+			if (cf.isCancelled()) timeout.cancel();
+		});
+		return new Task<T>(cf, null, c);
+	}
+	
+	/**
+	 * Creates a new Task with given {@link Runnable}, started after the given delay.
+	 * @see #schedule(Duration, Supplier)
+	 * @param delay How long to wait before starting the Task
+	 * @param r The provided {@link Runnable} to execute
+	 */
+	public static Task<Void> schedule(Duration delay, Runnable r) {
+		return schedule(delay, () -> {
+			r.run();
+			return null;
+		});
+	}
+	
+	/**
+	 * Runs the given {@link Runnable} at a fixed rate, starting one period from now.
+	 * <p>
+	 * If a run takes longer than the period, the next run starts late rather than running concurrently.
+	 * @see #every(Duration, Runnable, boolean)
+	 * @param period The time between the start of each run
+	 * @param r The provided {@link Runnable} to execute
+	 * @return A Task that only completes if it is cancelled, or if r throws an exception
+	 */
+	public static Task<Void> every(Duration period, Runnable r) {
+		return every(period, r, false);
+	}
+	
+	/**
+	 * Runs the given {@link Runnable} repeatedly, starting one period from now.
+	 * <p>
+	 * Call {@link #cancel()} on the returned Task to stop it. If r throws an exception, no more runs are
+	 * scheduled and the returned Task completes with that exception.
+	 * @param period The time between runs
+	 * @param r The provided {@link Runnable} to execute
+	 * @param fixedDelay should the period be measured from the end of each run, rather than from the start
+	 * @return A Task that only completes if it is cancelled, or if r throws an exception
+	 */
+	public static Task<Void> every(Duration period, Runnable r, boolean fixedDelay) {
+		if (period.isNegative() || period.isZero()) throw new IllegalArgumentException("period must be positive");
+		Periodic p = new Periodic(period.toNanos(), r, fixedDelay);
+		p.start();
+		return new Task<Void>(p.cf);
+	}
+	
+	private static class Periodic implements Runnable {
+		private CompletableFuture<Void> cf = new CompletableFuture<>();
+		private long period;
+		private Runnable r;
+		private boolean fixedDelay;
+		private long next;
+		private volatile WheelTimer.Timeout timeout;
+		
+		public Periodic(long period, Runnable r, boolean fixedDelay) {
+			this.period = period;
+			this.r = r;
+			this.fixedDelay = fixedDelay;
+		}
+		
+		public void start() {
+			next = System.nanoTime() + period;
+			timeout = timer.schedule(period, ex, this);
+			cf.whenComplete((t, e) -> timeout.cancel());
+		}
+		
+		@Override
+		public void run() {
+			if (cf.isDone()) return;
+			try {
+				r.run();
+			} catch (Throwable e) {
+				cf.completeExceptionally(e);
+				return;
+			}
+			long now = System.nanoTime();
+			next = fixedDelay ? now + period : next + period;
+			timeout = timer.schedule(next - now, ex, this);
+			if (cf.isDone()) timeout.cancel();
+		}
+	}
+	
+	/**
+	 * Adds an element to the given {@link RingBuffer}, waiting for room if it is full.
+	 * <p>
+	 * A full buffer doesn't hold a thread: the Task is resumed on the Task executor once a consumer makes room.
+	 * Cancelling the Task gives up on sending the element, if it hasn't been sent yet.
+	 * @param <E> The type of element
+	 * @param buffer The buffer to add to
+	 * @param e The element to add
+	 * @return A Task that completes once the element is in the buffer
+	 */
+	public static <E> Task<Void> send(RingBuffer<E> buffer, E e) {
+		Objects.requireNonNull(e);
+		CompletableFuture<Void> cf = new CompletableFuture<>();
+		new Sender<>(cf, buffer, e).run();
+		return new Task<Void>(cf);
+	}
+	
+	/**
+	 * Removes an element from the given {@link RingBuffer}, waiting for one if it is empty.
+	 * <p>
+	 * An empty buffer doesn't hold a thread: the Task is resumed on the Task executor once a producer adds an element.
+	 * If the Task is cancelled just as it takes an element, the element is sent back to the tail of the buffer,
+	 * waiting for room if necessary, rather than being dropped.
+	 * @param <E> The type of element
+	 * @param buffer The buffer to remove from
+	 * @return A Task containing the removed element
+	 */
+	public static <E> Task<E> receive(RingBuffer<E> buffer) {
+		CompletableFuture<E> cf = new CompletableFuture<>();
+		new Receiver<>(cf, buffer).run();
+		return new Task<E>(cf);
+	}
+	
+	private static class Sender<E> implements Runnable {
+		private CompletableFuture<Void> cf;
+		private RingBuffer<E> buffer;
+		private E e;
+		
+		public Sender(CompletableFuture<Void> cf, RingBuffer<E> buffer, E e) {
+			this.cf = cf;
+			this.buffer = buffer;
+			this.e = e;
+		}
+		
+		@Override
+		public void run() {
+			if (cf.isDone()) {
+				buffer.signalNotFull(); // don't swallow the wakeup that got us here
+				return;
+			}
+			if (buffer.offer(e)) {
+				cf.complete(null);
+			} else {
+				buffer.whenNotFull(() -> ex.execute(this));
+			}
+		}
+	}
+	
+	private static class Receiver<E> implements Runnable {
+		private CompletableFuture<E> cf;
+		private RingBuffer<E> buffer;
+		
+		public Receiver(CompletableFuture<E> cf, RingBuffer<E> buffer) {
+			this.cf = cf;
+			this.buffer = buffer;
+		}
+		
+		@Override
+		public void run() {
+			if (cf.isDone()) {
+				buffer.signalNotEmpty(); // don't swallow the wakeup that got us here
+				return;
+			}
+			E e = buffer.poll();
+			if (e == null) {
+				buffer.whenNotEmpty(() -> ex.execute(this));
+			} else if (!cf.complete(e) && !buffer.offer(e)) {
+				new Sender<>(new CompletableFuture<>(), buffer, e).run();
+			}
+		}
+	}
+	
+	/**
+	 * Runs r on the Task executor once the delay has passed, using the shared timer
+	 */
+	static void later(long delayNanos, Runnable r) {
+		timer.schedule(delayNanos, ex, r);
+	}
+	
+	/**
+	 * Start building a {@link Pipeline}, a chain of stages that runs as a single Task per item
+	 * @param <T> The type of items entering the Pipeline
+	 * @param <R> The type {@link Function} f returns
+	 * @param f The first stage of the Pipeline
+	 * @return A new Pipeline containing only the given stage
+	 */
+	public static <T, R> Pipeline<T, R> pipeline(Function<T, R> f) {
+		return new Pipeline<>(f);
 	}
 	
 	/**
@@ -54,7 +515,8 @@ public class Task<T> {
 	 * @return A new Task encapsulating all chained Tasks
 	 */
 	public Task<Void> then(Consumer<T> c) {
-		return new Task<Void>(cf.thenAcceptAsync(c, ex));
+		long chain = continuation();
+		return new Task<Void>(cf.thenAcceptAsync(TaskEvents.wrapConsumer(chain, "then", c), executor()), priority, chain);
 	}
 	
 	/**
@@ -64,7 +526,8 @@ public class Task<T> {
 	 * @return A new Task encapsulating all chained Tasks, containing the result of f
 	 */
 	public <R> Task<R> then(Function<T, R> f) {
-		return new Task<R>(cf.thenApplyAsync(f, ex));
+		long chain = continuation();
+		return new Task<R>(cf.thenApplyAsync(TaskEvents.wrap(chain, "then", f), executor()), priority, chain);
 	}
 	
 	/**
@@ -73,7 +536,8 @@ public class Task<T> {
 	 * @return A new Task encapsulating all chained Tasks
 	 */
 	public Task<Void> then(Runnable r) {
-		return new Task<Void>(cf.thenRunAsync(r, ex));
+		long chain = continuation();
+		return new Task<Void>(cf.thenRunAsync(TaskEvents.wrap(chain, "then", r), executor()), priority, chain);
 	}
 	
 	
@@ -85,16 +549,15 @@ public class Task<T> {
 	 * @return A new Task encapsulating all chained Tasks
 	 */
 	public <I> Task<Void> combine(I toInject, BiConsumer<I, T> biconsumer) {
-		return new Task<Void>(CompletableFuture.runAsync(() -> {
-			try {
-				T t = this.cf.get();
-				biconsumer.accept(toInject, t);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			} catch (ExecutionException e) {
+		long chain = continuation();
+		return new Task<Void>(cf.handleAsync(TaskEvents.wrap(chain, "combine", (T t, Throwable e) -> {
+			if (e != null) {
 				e.printStackTrace();
+			} else {
+				biconsumer.accept(toInject, t);
 			}
-		}, ex));
+			return (Void) null;
+		}), executor()), priority, chain);
 	}
 	
 	/**
@@ -104,16 +567,11 @@ public class Task<T> {
 	 * @return A new Task<R> encapsulating all chained Tasks, containing result of s
 	 */
 	public <R> Task<R> then(Supplier<R> s) {
-		return new Task<R>(CompletableFuture.supplyAsync(() -> {
-			try {
-				this.cf.get();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			} catch (ExecutionException e) {
-				e.printStackTrace();
-			}
+		long chain = continuation();
+		return new Task<R>(cf.handleAsync(TaskEvents.wrap(chain, "then", (T t, Throwable e) -> {
+			if (e != null) e.printStackTrace();
 			return s.get();
-		}, ex));
+		}), executor()), priority, chain);
 	}
 	
 	/**
@@ -122,15 +580,11 @@ public class Task<T> {
 	 * @return A new Task encapsulating the previous Task, and its exception handler
 	 */
 	public Task<Void> handle(Consumer<Throwable> handler) {
-		return new Task<Void>(CompletableFuture.runAsync(() -> {
-			try {
-				this.cf.get();
-			} catch (InterruptedException e) {
-				handler.accept(e);
-			} catch (ExecutionException e) {
-				handler.accept(e.getCause());
-			}
-		}, ex));
+		long chain = continuation();
+		return new Task<Void>(cf.handleAsync(TaskEvents.wrap(chain, "handle", (T t, Throwable e) -> {
+			if (e != null) handler.accept(e instanceof CompletionException ? e.getCause() : e);
+			return (Void) null;
+		}), executor()), priority, chain);
 	}
 	
 	/**
@@ -139,28 +593,41 @@ public class Task<T> {
 	 * @return A new Task encapsulating the previous Task, and its exception handler
 	 */
 	public Task<T> handle(Function<Throwable, T> handler) {
-		return new Task<T>(cf.handleAsync(new BiFunction<T, Throwable, T>() {
+		long chain = continuation();
+		return new Task<T>(cf.handleAsync(TaskEvents.wrap(chain, "handle", new BiFunction<T, Throwable, T>() {
 			@Override
 			public T apply(T t, Throwable e) {
 				if (e != null) {
-					if (e instanceof ExecutionException) return handler.apply(e.getCause());
+					if (e instanceof CompletionException) return handler.apply(e.getCause());
 					return handler.apply(e);
 				}
 				return t;
 			}
-		}, ex));
+		}), executor()), priority, chain);
+	}
+	
+	/**
+	 * Attempts to cancel the Task, if it hasn't completed yet.
+	 * <p>
+	 * A cancelled Task that hasn't started won't run, but one that is already running is not interrupted.
+	 * Awaiting a cancelled Task throws a {@link java.util.concurrent.CancellationException}.
+	 * @return true if the Task is now cancelled
+	 */
+	public boolean cancel() {
+		return cf.cancel(false);
 	}
 	
 	/**
 	 * Retrieve the value returned by the Task, waiting for completion if necessary.
 	 * <p>
-	 * Allows synchronous handling of any potential exception that occurred while executing the Task
+	 * Allows synchronous handling of any potential exception that occurred while executing the Task.
+	 * Awaiting from inside another Task lets the pool start a spare thread while this one is blocked.
 	 * @return The value returned by the Task
 	 * @throws Throwable A potential exception that occurred while executing the Task
 	 */
 	public T await() throws Throwable {
 		try {
-			return cf.get();
+			return get(cf);
 		} catch (ExecutionException e) {
 			throw e.getCause();
 		}
@@ -176,7 +643,7 @@ public class Task<T> {
 	 */
 	public T awaitUnsafe() {
 		try {
-			return cf.get();
+			return get(cf);
 		} catch (ExecutionException e) {
 			throw new RuntimeException(e.getCause());
 		} catch (InterruptedException e) {
@@ -194,7 +661,7 @@ public class Task<T> {
 	public static void awaitAll(Consumer<GroupTaskException> handler, Task<?>... tasks) {
 		for (Task<?> t : tasks) {
 			try {
-				t.cf.get();
+				get(t.cf);
 			} catch (ExecutionException e) {
 				handler.accept(new GroupTaskException(t, e.getCause()));
 			} catch (InterruptedException e) {
@@ -213,7 +680,7 @@ public class Task<T> {
 	public static void awaitAll(Consumer<GroupTaskException> handler, Collection<? extends Task<?>> tasks) {
 		for (Task<?> t : tasks) {
 			try {
-				t.cf.get();
+				get(t.cf);
 			} catch (ExecutionException e) {
 				handler.accept(new GroupTaskException(t, e.getCause()));
 			} catch (InterruptedException e) {
@@ -234,7 +701,7 @@ public class Task<T> {
 		MultiException mex = new MultiException();
 		for (Task<?> t : tasks) {
 			try {
-				t.cf.get();
+				get(t.cf);
 			} catch (ExecutionException e) {
 				mex.addCause(new GroupTaskException(t, e.getCause()));
 			} catch (InterruptedException e) {
@@ -256,7 +723,7 @@ public class Task<T> {
 		MultiException mex = new MultiException();
 		for (Task<?> t : tasks) {
 			try {
-				t.cf.get();
+				get(t.cf);
 			} catch (ExecutionException e) {
 				mex.addCause(new GroupTaskException(t, e.getCause()));
 			} catch (InterruptedException e) {
@@ -266,6 +733,173 @@ public class Task<T> {
 		mex.throwMe();
 	}
 
+	/**
+	 * @return How many awaits have had to block a pool worker thread
+	 */
+	public static long getBlockingAwaitCount() {
+		return blockingAwaits.sum();
+	}
+	
+	/**
+	 * Wait for the given future, letting the pool compensate if the current thread is one of its workers.
+	 */
+	private static <V> V get(CompletableFuture<V> f) throws InterruptedException, ExecutionException {
+		if (!f.isDone() && Thread.currentThread() instanceof ForkJoinWorkerThread) {
+			blockingAwaits.increment();
+			ForkJoinPool.managedBlock(new FutureBlocker(f));
+		}
+		return f.get();
+	}
+	
+	/**
+	 * Take from the given queue, letting the pool compensate if the current thread is one of its workers.
+	 */
+	private static <V> V take(BlockingQueue<V> queue) throws InterruptedException {
+		V v = queue.poll();
+		if (v != null) return v;
+		if (!(Thread.currentThread() instanceof ForkJoinWorkerThread)) return queue.take();
+		blockingAwaits.increment();
+		QueueBlocker<V> blocker = new QueueBlocker<>(queue);
+		ForkJoinPool.managedBlock(blocker);
+		return blocker.item;
+	}
+	
+	/**
+	 * Parks until a future completes. The future's own get() would ask the pool to compensate a second time,
+	 * so the waiting thread is unparked by a completion callback instead.
+	 */
+	private static class FutureBlocker implements ForkJoinPool.ManagedBlocker {
+		private CompletableFuture<?> f;
+		private Thread waiter = Thread.currentThread();
+		
+		public FutureBlocker(CompletableFuture<?> f) {
+			this.f = f;
+			f.whenComplete((v, e) -> LockSupport.unpark(waiter));
+		}
+		
+		@Override
+		public boolean block() throws InterruptedException {
+			while (!f.isDone()) {
+				LockSupport.park(this);
+				if (Thread.interrupted()) throw new InterruptedException();
+			}
+			return true;
+		}
+		
+		@Override
+		public boolean isReleasable() {
+			return f.isDone();
+		}
+	}
+	
+	private static class QueueBlocker<V> implements ForkJoinPool.ManagedBlocker {
+		private BlockingQueue<V> queue;
+		private V item;
+		
+		public QueueBlocker(BlockingQueue<V> queue) {
+			this.queue = queue;
+		}
+		
+		@Override
+		public boolean block() throws InterruptedException {
+			if (item == null) item = queue.take();
+			return true;
+		}
+		
+		@Override
+		public boolean isReleasable() {
+			return item != null || (item = queue.poll()) != null;
+		}
+	}
+
+	/**
+	 * Register a callback for when this Task completes, without scheduling a new Task.
+	 * The callback receives either the result or the exception thrown by the Task.
+	 */
+	void whenDone(BiConsumer<? super T, ? super Throwable> callback) {
+		cf.whenComplete((t, e) -> callback.accept(t, e instanceof CompletionException ? e.getCause() : e));
+	}
+	
+	/**
+	 * Iterate over the results of the given Tasks in the order they complete.
+	 * <p>
+	 * Each Task is handed to a queue as soon as it completes, so results can be processed while the rest
+	 * of the group is still running. The queue only holds the completed Tasks themselves, and never more
+	 * than the size of the group.
+	 * Failed and cancelled Tasks are skipped, and once every Task has been consumed any exceptions are thrown
+	 * as a RuntimeException or {@link MultiException}, the same as {@link #awaitAllUnsafe(Collection)}.
+	 * @param <T> The type returned by the Tasks
+	 * @param tasks A Collection of Tasks to iterate over
+	 * @return An {@link Iterator} that blocks until the next Task completes
+	 */
+	public static <T> Iterator<T> completionIterator(Collection<? extends Task<T>> tasks) {
+		return new CompletionIterator<>(tasks);
+	}
+	
+	/**
+	 * Stream the results of the given Tasks in the order they complete.
+	 * <p>
+	 * See {@link #completionIterator(Collection)} for how failures are reported.
+	 * @param <T> The type returned by the Tasks
+	 * @param tasks A Collection of Tasks to stream
+	 * @return A sequential {@link Stream} of results in completion order
+	 */
+	public static <T> Stream<T> completionStream(Collection<? extends Task<T>> tasks) {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(completionIterator(tasks), Spliterator.ORDERED), false);
+	}
+	
+	private static class CompletionIterator<T> implements Iterator<T> {
+		private BlockingQueue<Task<T>> completed;
+		private MultiException mex = new MultiException();
+		private int remaining;
+		private boolean ready;
+		private boolean finished;
+		private T next;
+		
+		public CompletionIterator(Collection<? extends Task<T>> tasks) {
+			this.remaining = tasks.size();
+			this.completed = new ArrayBlockingQueue<>(Math.max(1, remaining));
+			for (Task<T> t : tasks) {
+				t.cf.whenComplete((v, e) -> completed.offer(t));
+			}
+		}
+		
+		@Override
+		public boolean hasNext() {
+			while (!ready && remaining > 0) {
+				Task<T> t;
+				try {
+					t = take(completed);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				remaining--;
+				try {
+					next = get(t.cf);
+					ready = true;
+				} catch (ExecutionException e) {
+					mex.addCause(new GroupTaskException(t, e.getCause()));
+				} catch (CancellationException | InterruptedException e) {
+					mex.addCause(new GroupTaskException(t, e));
+				}
+			}
+			if (!ready && !finished) {
+				finished = true;
+				mex.throwMe();
+			}
+			return ready;
+		}
+		
+		@Override
+		public T next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			ready = false;
+			T t = next;
+			next = null;
+			return t;
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "Task[" + cf.toString() + "]";
@@ -0,0 +1,150 @@
+package com.meta1203.taskmaster;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Collects individually submitted keys into batches, and runs one batch {@link Function} per batch as a {@link Task}.
+ * <p>
+ * A batch is sent once it reaches the maximum batch size, or once the first key in it has waited for the maximum delay,
+ * whichever comes first. Submitting a key that is already waiting in the current batch shares its result.
+ * <p>
+ * Each key's Task completes with the value the batch Function mapped it to. A key missing from the returned Map fails
+ * with a {@link NoSuchElementException}, and if the batch Function throws, every Task in the batch fails with that exception.
+ * To fail individual keys, such as a single row rejected by a backend, create the TaskBatcher with
+ * {@link #perKey(Function, int, Duration)} and return a future per key instead.
+ *
+ * @param <K> the type of keys submitted
+ * @param <V> the type of values returned for each key
+ */
+public class TaskBatcher<K, V> {
+	private Function<List<K>, Map<K, CompletableFuture<V>>> batch;
+	private int maxBatchSize;
+	private long maxDelayNanos;
+	private Map<K, CompletableFuture<V>> current = new LinkedHashMap<>();
+	private long generation;
+	
+	/**
+	 * Creates a new TaskBatcher
+	 * @param batch the {@link Function} that looks up a batch of keys at once
+	 * @param maxBatchSize the number of keys that causes a batch to be sent immediately
+	 * @param maxDelay the longest a key may wait for its batch to fill up
+	 */
+	public TaskBatcher(Function<List<K>, Map<K, V>> batch, int maxBatchSize, Duration maxDelay) {
+		this(maxBatchSize, maxDelay);
+		this.batch = keys -> {
+			Map<K, V> values = batch.apply(keys);
+			if (values == null) return null;
+			Map<K, CompletableFuture<V>> results = new HashMap<>();
+			values.forEach((k, v) -> results.put(k, CompletableFuture.completedFuture(v)));
+			return results;
+		};
+	}
+	
+	private TaskBatcher(int maxBatchSize, Duration maxDelay) {
+		if (maxBatchSize < 1) throw new IllegalArgumentException("maxBatchSize must be at least 1");
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = maxDelay.toNanos();
+	}
+	
+	/**
+	 * Creates a new TaskBatcher whose batch {@link Function} reports an outcome for each key.
+	 * <p>
+	 * Each key's Task completes the same way as the future the batch Function mapped it to, so a key can fail
+	 * with its own exception while the rest of the batch succeeds. The futures may also complete later.
+	 * @param <K> the type of keys submitted
+	 * @param <V> the type of values returned for each key
+	 * @param batch the {@link Function} that looks up a batch of keys at once
+	 * @param maxBatchSize the number of keys that causes a batch to be sent immediately
+	 * @param maxDelay the longest a key may wait for its batch to fill up
+	 * @return A new TaskBatcher
+	 */
+	public static <K, V> TaskBatcher<K, V> perKey(Function<List<K>, Map<K, CompletableFuture<V>>> batch, int maxBatchSize, Duration maxDelay) {
+		TaskBatcher<K, V> batcher = new TaskBatcher<>(maxBatchSize, maxDelay);
+		batcher.batch = batch;
+		return batcher;
+	}
+	
+	/**
+	 * Adds a key to the current batch
+	 * @param key The key to look up
+	 * @return A Task containing the value for the given key, once its batch has run
+	 */
+	public Task<V> submit(K key) {
+		CompletableFuture<V> cf;
+		Map<K, CompletableFuture<V>> full = null;
+		long timed = -1;
+		synchronized (this) {
+			cf = current.get(key);
+			if (cf == null) {
+				cf = new CompletableFuture<>();
+				current.put(key, cf);
+				if (current.size() == 1) timed = generation;
+				if (current.size() >= maxBatchSize) full = take();
+			}
+		}
+		if (full != null) {
+			dispatch(full);
+		} else if (timed >= 0) {
+			long gen = timed;
+			Task.later(maxDelayNanos, () -> flush(gen));
+		}
+		return new Task<>(cf);
+	}
+	
+	/**
+	 * Sends the current batch immediately, if it contains any keys
+	 */
+	public void flush() {
+		Map<K, CompletableFuture<V>> b;
+		synchronized (this) {
+			b = take();
+		}
+		dispatch(b);
+	}
+	
+	private void flush(long gen) {
+		Map<K, CompletableFuture<V>> b;
+		synchronized (this) {
+			if (gen != generation) return; // that batch was already sent
+			b = take();
+		}
+		dispatch(b);
+	}
+	
+	private Map<K, CompletableFuture<V>> take() {
+		Map<K, CompletableFuture<V>> b = current;
+		current = new LinkedHashMap<>();
+		generation++;
+		return b;
+	}
+	
+	private void dispatch(Map<K, CompletableFuture<V>> b) {
+		if (b.isEmpty()) return;
+		List<K> keys = new ArrayList<>(b.keySet());
+		Task.execute(() -> batch.apply(keys)).whenDone((results, e) -> {
+			for (Map.Entry<K, CompletableFuture<V>> entry : b.entrySet()) {
+				CompletableFuture<V> target = entry.getValue();
+				CompletableFuture<V> outcome = e == null && results != null ? results.get(entry.getKey()) : null;
+				if (e != null) {
+					target.completeExceptionally(e);
+				} else if (outcome == null) {
+					target.completeExceptionally(new NoSuchElementException("No result for key " + entry.getKey()));
+				} else {
+					outcome.whenComplete((v, ex) -> {
+						if (ex != null) target.completeExceptionally(ex instanceof CompletionException ? ex.getCause() : ex);
+						else target.complete(v);
+					});
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,234 @@
+package com.meta1203.taskmaster;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for the lifecycle of {@link Task}s.
+ * <p>
+ * Every Task created while recording belongs to a chain, shared by everything chained onto it with then(),
+ * handle() or combine(), so a stalled worker can be traced back to the Task that started its chain.
+ * When none of these events are enabled, the wrap methods return their argument untouched and no chain ids
+ * are assigned, so Tasks cost nothing extra. Whether any are enabled is worked out again each time a recording
+ * starts or stops, so checking it costs a single volatile read per Task.
+ */
+final class TaskEvents {
+	private static final EventType SUBMITTED = EventType.getEventType(Submitted.class);
+	private static final EventType STARTED = EventType.getEventType(Started.class);
+	private static final EventType COMPLETED = EventType.getEventType(Completed.class);
+	private static final EventType FAILED = EventType.getEventType(Failed.class);
+	private static final AtomicLong chains = new AtomicLong();
+	private static volatile boolean enabled;
+	
+	static {
+		FlightRecorder.addListener(new FlightRecorderListener() {
+			@Override
+			public void recordingStateChanged(Recording recording) {
+				refresh();
+			}
+		});
+		refresh();
+	}
+	
+	private TaskEvents() {}
+	
+	private static void refresh() {
+		enabled = SUBMITTED.isEnabled() || STARTED.isEnabled() || COMPLETED.isEnabled() || FAILED.isEnabled();
+	}
+	
+	static boolean enabled() {
+		return enabled;
+	}
+	
+	/**
+	 * @return A new chain id, or 0 if not recording
+	 */
+	static long newChain() {
+		return enabled() ? chains.incrementAndGet() : 0;
+	}
+	
+	static <T> Supplier<T> wrap(long chain, String stage, Supplier<T> s) {
+		if (chain == 0 || !enabled()) return s;
+		submitted(chain, stage);
+		return () -> {
+			Completed c = started(chain, stage);
+			try {
+				T t = s.get();
+				completed(c);
+				return t;
+			} catch (Throwable e) {
+				failed(chain, stage, e);
+				throw e;
+			}
+		};
+	}
+	
+	static <T, R> Function<T, R> wrap(long chain, String stage, Function<T, R> f) {
+		if (chain == 0 || !enabled()) return f;
+		submitted(chain, stage);
+		return t -> {
+			Completed c = started(chain, stage);
+			try {
+				R r = f.apply(t);
+				completed(c);
+				return r;
+			} catch (Throwable e) {
+				failed(chain, stage, e);
+				throw e;
+			}
+		};
+	}
+	
+	static <T, U, R> BiFunction<T, U, R> wrap(long chain, String stage, BiFunction<T, U, R> f) {
+		if (chain == 0 || !enabled()) return f;
+		submitted(chain, stage);
+		return (t, u) -> {
+			Completed c = started(chain, stage);
+			try {
+				R r = f.apply(t, u);
+				completed(c);
+				return r;
+			} catch (Throwable e) {
+				failed(chain, stage, e);
+				throw e;
+			}
+		};
+	}
+	
+	static <T> Consumer<T> wrapConsumer(long chain, String stage, Consumer<T> consumer) {
+		if (chain == 0 || !enabled()) return consumer;
+		submitted(chain, stage);
+		return t -> {
+			Completed c = started(chain, stage);
+			try {
+				consumer.accept(t);
+				completed(c);
+			} catch (Throwable e) {
+				failed(chain, stage, e);
+				throw e;
+			}
+		};
+	}
+	
+	static Runnable wrap(long chain, String stage, Runnable r) {
+		if (chain == 0 || !enabled()) return r;
+		submitted(chain, stage);
+		return () -> {
+			Completed c = started(chain, stage);
+			try {
+				r.run();
+				completed(c);
+			} catch (Throwable e) {
+				failed(chain, stage, e);
+				throw e;
+			}
+		};
+	}
+	
+	private static void submitted(long chain, String stage) {
+		if (!SUBMITTED.isEnabled()) return;
+		Submitted e = new Submitted();
+		e.chainId = chain;
+		e.stage = stage;
+		e.commit();
+	}
+	
+	private static Completed started(long chain, String stage) {
+		if (STARTED.isEnabled()) {
+			Started e = new Started();
+			e.chainId = chain;
+			e.stage = stage;
+			e.commit();
+		}
+		if (!COMPLETED.isEnabled()) return null;
+		Completed c = new Completed();
+		c.chainId = chain;
+		c.stage = stage;
+		c.begin();
+		return c;
+	}
+	
+	private static void completed(Completed c) {
+		if (c != null) c.commit();
+	}
+	
+	private static void failed(long chain, String stage, Throwable ex) {
+		if (!FAILED.isEnabled()) return;
+		Failed e = new Failed();
+		e.chainId = chain;
+		e.stage = stage;
+		e.exception = ex.getClass().getName();
+		e.message = ex.getMessage();
+		e.commit();
+	}
+	
+	@Name("com.meta1203.taskmaster.TaskSubmitted")
+	@Label("Task Submitted")
+	@Category({"TaskMaster", "Task"})
+	@Description("A Task was created or chained onto another; a chained Task only starts once the one before it completes")
+	static class Submitted extends Event {
+		@Label("Chain Id")
+		long chainId;
+		
+		@Label("Stage")
+		String stage;
+	}
+	
+	@Name("com.meta1203.taskmaster.TaskStarted")
+	@Label("Task Started")
+	@Category({"TaskMaster", "Task"})
+	@Description("A Task started running on a worker thread")
+	@StackTrace(false)
+	static class Started extends Event {
+		@Label("Chain Id")
+		long chainId;
+		
+		@Label("Stage")
+		String stage;
+	}
+	
+	@Name("com.meta1203.taskmaster.TaskCompleted")
+	@Label("Task Completed")
+	@Category({"TaskMaster", "Task"})
+	@Description("A Task ran to completion; the duration is how long it ran")
+	@StackTrace(false)
+	static class Completed extends Event {
+		@Label("Chain Id")
+		long chainId;
+		
+		@Label("Stage")
+		String stage;
+	}
+	
+	@Name("com.meta1203.taskmaster.TaskFailed")
+	@Label("Task Failed")
+	@Category({"TaskMaster", "Task"})
+	@Description("A Task threw an exception")
+	static class Failed extends Event {
+		@Label("Chain Id")
+		long chainId;
+		
+		@Label("Stage")
+		String stage;
+		
+		@Label("Exception")
+		String exception;
+		
+		@Label("Message")
+		String message;
+	}
+}
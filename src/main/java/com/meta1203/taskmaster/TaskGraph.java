@@ -0,0 +1,217 @@
+package com.meta1203.taskmaster;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * A graph of {@link Supplier}s with declared dependencies, run as {@link Task}s.
+ * <p>
+ * A node is started once all of its dependencies have completed. When more nodes are ready than
+ * the graph's parallelism allows, the node with the longest remaining path to the end of the graph
+ * runs first, so the critical path is never left waiting behind work that has slack.
+ * <p>
+ * If a node fails, every node depending on it (directly or indirectly) is skipped. Both the failure
+ * and the skipped nodes are reported through the Task returned by {@link #run()}.
+ */
+public class TaskGraph {
+	private Map<String, Node> nodes = new LinkedHashMap<>();
+	private int parallelism;
+	
+	/**
+	 * Creates a new, empty TaskGraph that runs up to one node per available processor at once
+	 */
+	public TaskGraph() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Creates a new, empty TaskGraph
+	 * @param parallelism the maximum number of nodes to run at once
+	 */
+	public TaskGraph(int parallelism) {
+		if (parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Adds a node to the graph with a cost of 1
+	 * @param id the unique name of the node
+	 * @param s the {@link Supplier} to run
+	 * @param dependencies the names of the nodes that must complete before this one starts
+	 * @return this TaskGraph
+	 */
+	public TaskGraph add(String id, Supplier<?> s, String... dependencies) {
+		return add(id, 1, s, dependencies);
+	}
+	
+	/**
+	 * Adds a node to the graph
+	 * @param id the unique name of the node
+	 * @param cost the estimated relative cost of the node, used to find the critical path
+	 * @param s the {@link Supplier} to run
+	 * @param dependencies the names of the nodes that must complete before this one starts
+	 * @return this TaskGraph
+	 */
+	public TaskGraph add(String id, long cost, Supplier<?> s, String... dependencies) {
+		if (nodes.containsKey(id)) throw new IllegalArgumentException("Node " + id + " is already in the graph");
+		if (cost < 0) throw new IllegalArgumentException("cost must not be negative");
+		nodes.put(id, new Node(id, cost, s, dependencies));
+		return this;
+	}
+	
+	/**
+	 * Runs every node in the graph.
+	 * <p>
+	 * The returned Task contains the result of every node, keyed by name. If any node failed,
+	 * it instead completes with a RuntimeException or {@link MultiException} holding a {@link GroupTaskException}
+	 * for each failed node and a {@link CancellationException} for each skipped node.
+	 * @return A Task that completes once every node has completed or been skipped
+	 * @throws IllegalArgumentException if a node depends on a node that isn't in the graph
+	 * @throws IllegalStateException if the graph contains a cycle
+	 */
+	public Task<Map<String, Object>> run() {
+		return new Run().start();
+	}
+	
+	private static class Node {
+		private String id;
+		private long cost;
+		private Supplier<?> s;
+		private String[] dependencies;
+		
+		public Node(String id, long cost, Supplier<?> s, String[] dependencies) {
+			this.id = id;
+			this.cost = cost;
+			this.s = s;
+			this.dependencies = dependencies;
+		}
+	}
+	
+	/**
+	 * The state of a single call to {@link TaskGraph#run()}
+	 */
+	private class Run {
+		private Map<String, List<Node>> dependents = new HashMap<>();
+		private Map<String, Integer> waitingOn = new HashMap<>();
+		private Map<String, Long> rank = new HashMap<>();
+		private PriorityQueue<Node> ready = new PriorityQueue<>((a, b) -> Long.compare(rank.get(b.id), rank.get(a.id)));
+		private Map<String, Object> results = new HashMap<>();
+		private Set<String> skipped = new HashSet<>();
+		private MultiException mex = new MultiException();
+		private CompletableFuture<Map<String, Object>> cf = new CompletableFuture<>();
+		private int running;
+		private int remaining;
+		
+		public Task<Map<String, Object>> start() {
+			for (Node n : nodes.values()) {
+				dependents.put(n.id, new ArrayList<>());
+			}
+			for (Node n : nodes.values()) {
+				for (String dep : n.dependencies) {
+					List<Node> l = dependents.get(dep);
+					if (l == null) throw new IllegalArgumentException("Node " + n.id + " depends on unknown node " + dep);
+					l.add(n);
+				}
+				waitingOn.put(n.id, n.dependencies.length);
+			}
+			rankNodes();
+			
+			synchronized (this) {
+				remaining = nodes.size();
+				for (Node n : nodes.values()) {
+					if (n.dependencies.length == 0) ready.add(n);
+				}
+				dispatch();
+			}
+			return new Task<>(cf);
+		}
+		
+		/**
+		 * Computes the longest path from each node to the end of the graph, detecting cycles along the way
+		 */
+		private void rankNodes() {
+			Map<String, Integer> outstanding = new HashMap<>();
+			Deque<Node> sinks = new ArrayDeque<>();
+			for (Node n : nodes.values()) {
+				int count = dependents.get(n.id).size();
+				outstanding.put(n.id, count);
+				if (count == 0) sinks.add(n);
+			}
+			
+			while (!sinks.isEmpty()) {
+				Node n = sinks.poll();
+				long longest = 0;
+				for (Node d : dependents.get(n.id)) {
+					longest = Math.max(longest, rank.get(d.id));
+				}
+				rank.put(n.id, n.cost + longest);
+				for (String dep : n.dependencies) {
+					if (outstanding.merge(dep, -1, Integer::sum) == 0) sinks.add(nodes.get(dep));
+				}
+			}
+			
+			if (rank.size() < nodes.size()) {
+				List<String> cyclic = new ArrayList<>();
+				for (String id : nodes.keySet()) {
+					if (!rank.containsKey(id)) cyclic.add(id);
+				}
+				throw new IllegalStateException("TaskGraph contains a cycle through " + cyclic);
+			}
+		}
+		
+		private void dispatch() {
+			while (running < parallelism && !ready.isEmpty()) {
+				Node n = ready.poll();
+				running++;
+				Task<?> t = Task.execute(n.s);
+				t.whenDone((r, e) -> finished(n, t, r, e));
+			}
+			if (remaining == 0 && running == 0 && !cf.isDone()) {
+				try {
+					mex.throwMe();
+					cf.complete(Collections.unmodifiableMap(results));
+				} catch (RuntimeException e) {
+					cf.completeExceptionally(e);
+				}
+			}
+		}
+		
+		private synchronized void finished(Node n, Task<?> t, Object r, Throwable e) {
+			running--;
+			remaining--;
+			if (e == null) {
+				results.put(n.id, r);
+				for (Node d : dependents.get(n.id)) {
+					if (waitingOn.merge(d.id, -1, Integer::sum) == 0) ready.add(d);
+				}
+			} else {
+				mex.addCause(new GroupTaskException(t, e));
+				skipDependents(n);
+			}
+			dispatch();
+		}
+		
+		private void skipDependents(Node failed) {
+			Deque<Node> toSkip = new ArrayDeque<>(dependents.get(failed.id));
+			while (!toSkip.isEmpty()) {
+				Node n = toSkip.poll();
+				if (!skipped.add(n.id)) continue;
+				remaining--;
+				mex.addCause(new CancellationException("Skipped " + n.id + " because " + failed.id + " failed"));
+				toSkip.addAll(dependents.get(n.id));
+			}
+		}
+	}
+}
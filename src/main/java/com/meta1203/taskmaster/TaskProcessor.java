@@ -0,0 +1,235 @@
+package com.meta1203.taskmaster;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A {@link Flow.Processor} that runs each item through a {@link Function} as a {@link Task}.
+ * <p>
+ * At most <code>concurrency</code> items are requested from upstream and in flight at once,
+ * and no more items are requested than downstream has asked for, so a slow subscriber
+ * slows down the publisher instead of filling memory.
+ * <p>
+ * If the Function throws, the exception is passed to the subscriber's onError and the upstream
+ * subscription is cancelled.
+ *
+ * @param <T> the type of items received from upstream
+ * @param <R> the type of items published downstream
+ */
+public class TaskProcessor<T, R> implements Flow.Processor<T, R> {
+	private Function<T, R> f;
+	private int concurrency;
+	private boolean ordered;
+	
+	private Flow.Subscription upstream;
+	private Flow.Subscriber<? super R> downstream;
+	private ArrayDeque<Slot<R>> pending = new ArrayDeque<>();
+	private long demand;
+	private int requested;
+	private int active;
+	private boolean upstreamDone;
+	private boolean cancelled;
+	private boolean terminated;
+	private Throwable error;
+	private AtomicInteger wip = new AtomicInteger();
+	
+	/**
+	 * Creates a new TaskProcessor that emits results in the order items were received
+	 * @param f the {@link Function} to run for each item
+	 * @param concurrency the maximum number of items processed at once
+	 */
+	public TaskProcessor(Function<T, R> f, int concurrency) {
+		this(f, concurrency, true);
+	}
+	
+	/**
+	 * Creates a new TaskProcessor
+	 * @param f the {@link Function} to run for each item
+	 * @param concurrency the maximum number of items processed at once
+	 * @param ordered should results be emitted in the order items were received, rather than the order they complete
+	 */
+	public TaskProcessor(Function<T, R> f, int concurrency, boolean ordered) {
+		if (concurrency < 1) throw new IllegalArgumentException("concurrency must be at least 1");
+		this.f = f;
+		this.concurrency = concurrency;
+		this.ordered = ordered;
+	}
+	
+	@Override
+	public void subscribe(Flow.Subscriber<? super R> subscriber) {
+		synchronized (this) {
+			if (downstream == null) {
+				downstream = subscriber;
+				subscriber = null;
+			}
+		}
+		if (subscriber != null) {
+			subscriber.onSubscribe(new Flow.Subscription() {
+				@Override
+				public void request(long n) {}
+				
+				@Override
+				public void cancel() {}
+			});
+			subscriber.onError(new IllegalStateException("TaskProcessor only supports a single subscriber"));
+			return;
+		}
+		downstream.onSubscribe(new Flow.Subscription() {
+			@Override
+			public void request(long n) {
+				synchronized (TaskProcessor.this) {
+					if (n <= 0) {
+						if (error == null) error = new IllegalArgumentException("Requested " + n + " items, must be positive");
+					} else {
+						demand += n;
+						if (demand < 0) demand = Long.MAX_VALUE;
+					}
+				}
+				drain();
+			}
+			
+			@Override
+			public void cancel() {
+				synchronized (TaskProcessor.this) {
+					cancelled = true;
+				}
+				drain();
+			}
+		});
+		drain();
+	}
+	
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		boolean reject;
+		synchronized (this) {
+			reject = upstream != null || terminated || cancelled;
+			if (upstream == null) upstream = subscription;
+		}
+		if (reject) {
+			subscription.cancel();
+			return;
+		}
+		drain();
+	}
+	
+	@Override
+	public void onNext(T item) {
+		Slot<R> slot = new Slot<>();
+		synchronized (this) {
+			if (terminated) return;
+			requested--;
+			active++;
+			if (ordered) pending.add(slot);
+		}
+		Task.execute(() -> f.apply(item)).whenDone((r, e) -> {
+			synchronized (this) {
+				slot.value = r;
+				slot.error = e;
+				slot.done = true;
+				if (!ordered) pending.add(slot);
+			}
+			drain();
+		});
+	}
+	
+	@Override
+	public void onError(Throwable throwable) {
+		synchronized (this) {
+			if (error == null) error = throwable;
+		}
+		drain();
+	}
+	
+	@Override
+	public void onComplete() {
+		synchronized (this) {
+			upstreamDone = true;
+		}
+		drain();
+	}
+	
+	/**
+	 * Emits whatever can be emitted and requests whatever can be requested.
+	 * Only one thread drains at a time, so downstream signals are never concurrent.
+	 */
+	private void drain() {
+		if (wip.getAndIncrement() != 0) return;
+		int missed = 1;
+		do {
+			for (;;) {
+				Flow.Subscriber<? super R> sub;
+				Flow.Subscription up;
+				R value = null;
+				Throwable err = null;
+				boolean emit = false;
+				boolean complete = false;
+				boolean cancelUp = false;
+				long req = 0;
+				
+				synchronized (this) {
+					sub = downstream;
+					up = upstream;
+					if (terminated || sub == null) break;
+					Slot<R> head = pending.peek();
+					if (cancelled) {
+						terminated = true;
+						cancelUp = true;
+					} else if (error != null) {
+						terminated = true;
+						cancelUp = !upstreamDone;
+						err = error;
+					} else if (head != null && head.done && head.error != null) {
+						terminated = true;
+						cancelUp = !upstreamDone;
+						err = head.error;
+					} else if (head != null && head.done && demand > 0) {
+						pending.poll();
+						active--;
+						demand--;
+						value = head.value;
+						emit = true;
+					} else if (upstreamDone && active == 0) {
+						terminated = true;
+						complete = true;
+					} else if (up != null && !upstreamDone) {
+						long want = Math.min(concurrency, demand) - requested - active;
+						if (want > 0) {
+							requested += want;
+							req = want;
+						}
+					}
+					if (terminated) pending.clear();
+				}
+				
+				if (cancelUp && up != null) up.cancel();
+				if (err != null) {
+					sub.onError(err);
+					break;
+				}
+				if (complete) {
+					sub.onComplete();
+					break;
+				}
+				if (emit) {
+					sub.onNext(value);
+					continue;
+				}
+				if (req > 0) {
+					up.request(req);
+					continue;
+				}
+				break;
+			}
+			missed = wip.addAndGet(-missed);
+		} while (missed != 0);
+	}
+	
+	private static class Slot<R> {
+		private R value;
+		private Throwable error;
+		private boolean done;
+	}
+}
@@ -0,0 +1,110 @@
+package com.meta1203.taskmaster;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed wheel timer: a single daemon thread that hands work to an {@link Executor} once it is due.
+ * <p>
+ * Timeouts are placed in one of a fixed number of buckets by deadline, and each tick only looks at one bucket,
+ * so scheduling and cancelling are constant time no matter how many timeouts are pending. Deadlines are rounded
+ * up to the next tick.
+ */
+class WheelTimer {
+	private long tickNanos;
+	private ArrayDeque<Timeout>[] wheel;
+	private int mask;
+	private ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+	private AtomicBoolean started = new AtomicBoolean();
+	private long startTime;
+	private long tick;
+	
+	@SuppressWarnings("unchecked")
+	public WheelTimer(long tickNanos, int buckets) {
+		if (Integer.bitCount(buckets) != 1) throw new IllegalArgumentException("buckets must be a power of two");
+		this.tickNanos = tickNanos;
+		this.wheel = (ArrayDeque<Timeout>[]) new ArrayDeque<?>[buckets];
+		for (int x = 0; x < buckets; x++) {
+			wheel[x] = new ArrayDeque<>();
+		}
+		this.mask = buckets - 1;
+	}
+	
+	/**
+	 * Runs r on the given {@link Executor} once the delay has passed
+	 * @return A {@link Timeout} that can be used to cancel r
+	 */
+	public Timeout schedule(long delayNanos, Executor ex, Runnable r) {
+		Timeout t = new Timeout(System.nanoTime() + Math.max(0, delayNanos), ex, r);
+		added.add(t);
+		if (!started.get() && started.compareAndSet(false, true)) {
+			startTime = System.nanoTime();
+			Thread worker = new Thread(this::run, "taskmaster-timer");
+			worker.setDaemon(true);
+			worker.start();
+		}
+		return t;
+	}
+	
+	private void run() {
+		for (;;) {
+			long deadline = startTime + (tick + 1) * tickNanos;
+			for (long now = System.nanoTime(); now < deadline; now = System.nanoTime()) {
+				LockSupport.parkNanos(this, deadline - now);
+			}
+			
+			for (Timeout t = added.poll(); t != null; t = added.poll()) {
+				if (t.cancelled) continue;
+				// bucket n is processed once tick n + 1 has started
+				long ticks = Math.max(tick, (t.deadline - startTime + tickNanos - 1) / tickNanos - 1);
+				t.rounds = (ticks - tick) / wheel.length;
+				wheel[(int) (ticks & mask)].add(t);
+			}
+			
+			ArrayDeque<Timeout> bucket = wheel[(int) (tick & mask)];
+			for (int x = bucket.size(); x > 0; x--) {
+				Timeout t = bucket.poll();
+				if (t.cancelled) continue;
+				if (t.rounds > 0) {
+					t.rounds--;
+					bucket.add(t);
+					continue;
+				}
+				try {
+					t.ex.execute(t.r);
+				} catch (RuntimeException e) {
+					e.printStackTrace();
+				}
+			}
+			tick++;
+		}
+	}
+	
+	/**
+	 * A pending unit of work in a {@link WheelTimer}
+	 */
+	static class Timeout {
+		private long deadline;
+		private Executor ex;
+		private Runnable r;
+		private long rounds;
+		private volatile boolean cancelled;
+		
+		private Timeout(long deadline, Executor ex, Runnable r) {
+			this.deadline = deadline;
+			this.ex = ex;
+			this.r = r;
+		}
+		
+		/**
+		 * Stops the work from running, if it hasn't been handed to its executor yet.
+		 * The timer drops it the next time it is looked at.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+	}
+}
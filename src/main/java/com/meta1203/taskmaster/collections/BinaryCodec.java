@@ -0,0 +1,141 @@
+package com.meta1203.taskmaster.collections;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts elements to and from bytes, for collections that store their elements outside the heap.
+ * <p>
+ * Collections using a BinaryCodec record the length of each encoded element themselves,
+ * so a codec doesn't need to write any framing of its own.
+ *
+ * @param <E> the type of elements encoded
+ */
+public interface BinaryCodec<E> {
+	/**
+	 * Writes an element at the buffer's position
+	 * @param e the element to encode, never null
+	 * @param dst the buffer to write to
+	 * @throws java.nio.BufferOverflowException if the element doesn't fit in the buffer
+	 */
+	void encode(E e, ByteBuffer dst);
+	
+	/**
+	 * Reads an element
+	 * @param src a buffer containing exactly one encoded element, between its position and limit
+	 * @return the decoded element
+	 */
+	E decode(ByteBuffer src);
+	
+	static BinaryCodec<Integer> ofInteger() {
+		return new BinaryCodec<Integer>() {
+			@Override
+			public void encode(Integer e, ByteBuffer dst) {
+				dst.putInt(e);
+			}
+			
+			@Override
+			public Integer decode(ByteBuffer src) {
+				return src.getInt();
+			}
+		};
+	}
+	
+	static BinaryCodec<Long> ofLong() {
+		return new BinaryCodec<Long>() {
+			@Override
+			public void encode(Long e, ByteBuffer dst) {
+				dst.putLong(e);
+			}
+			
+			@Override
+			public Long decode(ByteBuffer src) {
+				return src.getLong();
+			}
+		};
+	}
+	
+	static BinaryCodec<Double> ofDouble() {
+		return new BinaryCodec<Double>() {
+			@Override
+			public void encode(Double e, ByteBuffer dst) {
+				dst.putDouble(e);
+			}
+			
+			@Override
+			public Double decode(ByteBuffer src) {
+				return src.getDouble();
+			}
+		};
+	}
+	
+	/**
+	 * @return A codec that stores Strings as UTF-8
+	 */
+	static BinaryCodec<String> ofString() {
+		return new BinaryCodec<String>() {
+			@Override
+			public void encode(String e, ByteBuffer dst) {
+				dst.put(e.getBytes(StandardCharsets.UTF_8));
+			}
+			
+			@Override
+			public String decode(ByteBuffer src) {
+				byte[] b = new byte[src.remaining()];
+				src.get(b);
+				return new String(b, StandardCharsets.UTF_8);
+			}
+		};
+	}
+	
+	/**
+	 * @return A codec that stores elements with Java serialization
+	 */
+	static <E extends Serializable> BinaryCodec<E> serializable() {
+		return new BinaryCodec<E>() {
+			@Override
+			public void encode(E e, ByteBuffer dst) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+					out.writeObject(e);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+				dst.put(bytes.toByteArray());
+			}
+			
+			@SuppressWarnings("unchecked")
+			@Override
+			public E decode(ByteBuffer src) {
+				InputStream in = new InputStream() {
+					@Override
+					public int read() {
+						return src.hasRemaining() ? src.get() & 0xFF : -1;
+					}
+					
+					@Override
+					public int read(byte[] b, int off, int len) {
+						if (!src.hasRemaining()) return -1;
+						len = Math.min(len, src.remaining());
+						src.get(b, off, len);
+						return len;
+					}
+				};
+				try (ObjectInputStream ois = new ObjectInputStream(in)) {
+					return (E) ois.readObject();
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				} catch (ClassNotFoundException ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		};
+	}
+}
@@ -1,10 +1,26 @@
 package com.meta1203.taskmaster.collections;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.ListIterator;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
@@ -19,8 +35,12 @@ import java.util.function.UnaryOperator;
  */
 public class ConcurrentArrayList<E> extends ArrayList<E> {
 	private static final long serialVersionUID = -6104897338204207229L;
+	private static final int MAGIC = 0x544D434C; // "TMCL"
+	private static final int CHUNK = 1 << 16;
 	private ReadWriteLock lock = new ReentrantReadWriteLock();
 	private boolean snapshot = false;
+	private boolean indexed = false;
+	private transient PositionIndex positions;
 	
 	/**
 	 * Creates a new, empty ConcurrentArrayList
@@ -77,11 +97,303 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 		this.snapshot = snapshot;
 	}
 	
+	/**
+	 * Creates a new, empty ConcurrentArrayList
+	 * <p>
+	 * An indexed list keeps a hash index of where each element is, so contains(), indexOf() and lastIndexOf()
+	 * take constant time, and removeAll()/retainAll() take linear time, at the cost of extra memory and slower
+	 * inserts and removals in the middle of the list. Elements must not change their hashCode() while in an indexed list.
+	 * @param snapshot should the Collection interface iterator functions return CopiedIterators/CopiedListIterators
+	 * @param indexed should the list keep a hash index of its elements
+	 */
+	public ConcurrentArrayList(boolean snapshot, boolean indexed) {
+		this(snapshot);
+		setIndexed(indexed);
+	}
+	
+	/**
+	 * Creates a new ConcurrentArrayList containing the contents of the given collection
+	 * @see #ConcurrentArrayList(boolean, boolean)
+	 * @param arg0 the collection to copy into the new list
+	 * @param snapshot should the Collection interface iterator functions return CopiedIterators/CopiedListIterators
+	 * @param indexed should the list keep a hash index of its elements
+	 */
+	public ConcurrentArrayList(Collection<? extends E> arg0, boolean snapshot, boolean indexed) {
+		this(arg0, snapshot);
+		setIndexed(indexed);
+	}
+	
+	/**
+	 * Creates a new, empty ConcurrentArrayList with the given starting capacity
+	 * @see #ConcurrentArrayList(boolean, boolean)
+	 * @param capacity the starting capacity of the list 
+	 * @param snapshot should the Collection interface iterator functions return CopiedIterators/CopiedListIterators
+	 * @param indexed should the list keep a hash index of its elements
+	 */
+	public ConcurrentArrayList(int capacity, boolean snapshot, boolean indexed) {
+		this(capacity, snapshot);
+		setIndexed(indexed);
+	}
+	
+	private void lockRead() {
+		if (!LockWaitEvent.TYPE.isEnabled()) {
+			lock.readLock().lock();
+			return;
+		}
+		LockWaitEvent e = new LockWaitEvent();
+		e.begin();
+		lock.readLock().lock();
+		e.end();
+		if (e.shouldCommit()) {
+			e.size = super.size();
+			e.commit();
+		}
+	}
+	
+	private void lockWrite() {
+		if (!LockWaitEvent.TYPE.isEnabled()) {
+			lock.writeLock().lock();
+			return;
+		}
+		LockWaitEvent e = new LockWaitEvent();
+		e.begin();
+		lock.writeLock().lock();
+		e.end();
+		if (e.shouldCommit()) {
+			e.write = true;
+			e.size = super.size();
+			e.commit();
+		}
+	}
+	
+	private void setIndexed(boolean indexed) {
+		this.indexed = indexed;
+		if (indexed) {
+			positions = new PositionIndex(super.size());
+			reindex();
+		}
+	}
+	
+	/**
+	 * @return true if this list keeps a hash index of its elements
+	 */
+	public boolean isIndexed() {
+		return indexed;
+	}
+	
+	/**
+	 * Rebuilds the index from scratch. Must hold the write lock.
+	 */
+	private void reindex() {
+		if (positions == null) return;
+		positions.clear();
+		for (int x = 0, size = super.size(); x < size; x++) {
+			positions.add(super.get(x), x);
+		}
+	}
+	
+	/**
+	 * Updates the index after count elements were inserted at the given index. Must hold the write lock.
+	 */
+	private void inserted(int index, int count) {
+		if (positions == null) return;
+		for (int x = super.size() - 1; x >= index + count; x--) {
+			positions.move(super.get(x), x - count, x);
+		}
+		for (int x = index; x < index + count; x++) {
+			positions.add(super.get(x), x);
+		}
+	}
+	
+	/**
+	 * Updates the index after the given element was removed from the given index. Must hold the write lock.
+	 */
+	private void removed(int index, Object element) {
+		if (positions == null) return;
+		positions.remove(element, index);
+		for (int x = index, size = super.size(); x < size; x++) {
+			positions.move(super.get(x), x + 1, x);
+		}
+	}
+	
+	/**
+	 * Appends an element, keeping the index up to date. Must hold the write lock.
+	 */
+	private boolean append(E e) {
+		super.add(e);
+		if (positions != null) positions.add(e, super.size() - 1);
+		return true;
+	}
+	
+	/**
+	 * Replaces an element, keeping the index up to date. Must hold the write lock.
+	 */
+	private E replace(int index, E element) {
+		E old = super.set(index, element);
+		if (positions != null) {
+			positions.remove(old, index);
+			positions.add(element, index);
+		}
+		return old;
+	}
+	
+	/**
+	 * @return true if o is in this list. Must hold the read or write lock.
+	 */
+	private boolean has(Object o) {
+		return positions != null ? positions.contains(o) : super.contains(o);
+	}
+	
+	/**
+	 * Only used for streams written before ConcurrentArrayList serialized through {@link SerializedForm}
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (indexed) setIndexed(true);
+	}
+	
+	/**
+	 * ArrayList's own writeObject runs without this list's lock, so serialize a snapshot taken under the read lock instead
+	 */
+	private Object writeReplace() {
+		lockRead();
+		try {
+			return new SerializedForm(super.toArray(), snapshot, indexed);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	private static class SerializedForm implements Serializable {
+		private static final long serialVersionUID = 4113427270713432658L;
+		
+		private Object[] elements;
+		private boolean snapshot;
+		private boolean indexed;
+		
+		public SerializedForm(Object[] elements, boolean snapshot, boolean indexed) {
+			this.elements = elements;
+			this.snapshot = snapshot;
+			this.indexed = indexed;
+		}
+		
+		private Object readResolve() {
+			return new ConcurrentArrayList<>(Arrays.asList(elements), snapshot, indexed);
+		}
+	}
+	
+	/**
+	 * Writes a snapshot of this list to a channel in a compact binary format, encoding each element with the given codec.
+	 * <p>
+	 * The snapshot is taken under a single read lock, and encoding and writing happen after the lock is released,
+	 * through a fixed size buffer, so neither writers to this list nor memory use are held up by a large list.
+	 * @param channel the channel to write to
+	 * @param codec the {@link BinaryCodec} used to encode each element
+	 * @return the number of elements written
+	 * @throws IOException if the channel can't be written to
+	 */
+	@SuppressWarnings("unchecked")
+	public int writeTo(WritableByteChannel channel, BinaryCodec<? super E> codec) throws IOException {
+		Object[] elements = toArray();
+		ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK);
+		chunk.putInt(MAGIC).putInt(elements.length);
+		for (Object o : elements) {
+			E e = (E) o;
+			if (e == null) {
+				if (chunk.remaining() < Integer.BYTES) flush(channel, chunk);
+				chunk.putInt(-1);
+				continue;
+			}
+			for (;;) {
+				int start = chunk.position();
+				try {
+					chunk.putInt(0);
+					codec.encode(e, chunk);
+					chunk.putInt(start, chunk.position() - start - Integer.BYTES);
+					break;
+				} catch (BufferOverflowException ex) {
+					chunk.position(start);
+					if (start > 0) {
+						flush(channel, chunk);
+					} else {
+						// the element is bigger than the chunk on its own
+						chunk = ByteBuffer.allocate(chunk.capacity() * 2);
+					}
+				}
+			}
+		}
+		flush(channel, chunk);
+		return elements.length;
+	}
+	
+	/**
+	 * Reads a list written by {@link #writeTo(WritableByteChannel, BinaryCodec)}
+	 * @param <E> the type of elements in the list
+	 * @param channel the channel to read from
+	 * @param codec the {@link BinaryCodec} used to decode each element
+	 * @return a new ConcurrentArrayList containing the elements read
+	 * @throws IOException if the channel can't be read, or doesn't contain a list
+	 */
+	public static <E> ConcurrentArrayList<E> readFrom(ReadableByteChannel channel, BinaryCodec<? extends E> codec) throws IOException {
+		ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK);
+		chunk.flip();
+		chunk = fill(channel, chunk, Integer.BYTES * 2);
+		if (chunk.getInt() != MAGIC) throw new IOException("Channel does not contain a ConcurrentArrayList");
+		int count = chunk.getInt();
+		ConcurrentArrayList<E> l = new ConcurrentArrayList<>(count);
+		for (int x = 0; x < count; x++) {
+			chunk = fill(channel, chunk, Integer.BYTES);
+			int length = chunk.getInt();
+			if (length < 0) {
+				l.append(null);
+				continue;
+			}
+			chunk = fill(channel, chunk, length);
+			int end = chunk.position() + length;
+			int limit = chunk.limit();
+			chunk.limit(end);
+			l.append(codec.decode(chunk));
+			chunk.limit(limit);
+			chunk.position(end);
+		}
+		return l;
+	}
+	
+	private static void flush(WritableByteChannel channel, ByteBuffer chunk) throws IOException {
+		chunk.flip();
+		while (chunk.hasRemaining()) channel.write(chunk);
+		chunk.clear();
+	}
+	
+	/**
+	 * Makes sure at least the given number of unread bytes are in the buffer
+	 * @return The buffer, or a bigger one if the given buffer couldn't hold that many bytes
+	 */
+	private static ByteBuffer fill(ReadableByteChannel channel, ByteBuffer chunk, int bytes) throws IOException {
+		if (chunk.remaining() >= bytes) return chunk;
+		if (chunk.capacity() < bytes) {
+			ByteBuffer bigger = ByteBuffer.allocate(bytes);
+			bigger.put(chunk);
+			chunk = bigger;
+		} else {
+			chunk.compact();
+		}
+		while (chunk.position() < bytes) {
+			if (channel.read(chunk) < 0) throw new EOFException("Channel ended partway through a ConcurrentArrayList");
+		}
+		chunk.flip();
+		return chunk;
+	}
+	
 	@Override
 	public boolean containsAll(Collection<?> c) {
-		lock.readLock().lock();
+		lockRead();
 		try {
-			return super.containsAll(c);
+			if (positions == null) return super.containsAll(c);
+			for (Object o : c) {
+				if (!positions.contains(o)) return false;
+			}
+			return true;
 		} finally {
 			lock.readLock().unlock();			
 		}
@@ -89,9 +401,9 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public boolean contains(Object o) {
-		lock.readLock().lock();
+		lockRead();
 		try {
-			return super.contains(o);
+			return has(o);
 		} finally {
 			lock.readLock().unlock();			
 		}
@@ -99,7 +411,7 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public boolean equals(Object o) {
-		lock.readLock().lock();
+		lockRead();
 		try {
 			return super.equals(o);
 		} finally {
@@ -109,7 +421,7 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public void forEach(Consumer<? super E> action) {
-		lock.readLock().lock();
+		lockRead();
 		try {
 			super.forEach(action);
 		} finally {
@@ -119,7 +431,7 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public E get(int index) {
-		lock.readLock().lock();
+		lockRead();
 		try {
 			return super.get(index);
 		} finally {
@@ -129,7 +441,7 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public int hashCode() {
-		lock.readLock().lock();
+		lockRead();
 		try {
 			return super.hashCode();
 		} finally {
@@ -139,9 +451,9 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public int indexOf(Object o) {
-		lock.readLock().lock();
+		lockRead();
 		try {
-			return super.indexOf(o);
+			return positions != null ? positions.first(o) : super.indexOf(o);
 		} finally {
 			lock.readLock().unlock();			
 		}
@@ -154,9 +466,9 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public int lastIndexOf(Object o) {
-		lock.readLock().lock();
+		lockRead();
 		try {
-			return super.lastIndexOf(o);
+			return positions != null ? positions.last(o) : super.lastIndexOf(o);
 		} finally {
 			lock.readLock().unlock();			
 		}
@@ -164,7 +476,7 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public int size() {
-		lock.readLock().lock();
+		lockRead();
 		try {
 			return super.size();
 		} finally {
@@ -174,7 +486,7 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public Object[] toArray() {
-		lock.readLock().lock();
+		lockRead();
 		try {
 			return super.toArray();
 		} finally {
@@ -184,7 +496,7 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public <T> T[] toArray(IntFunction<T[]> generator) {
-		lock.readLock().lock();
+		lockRead();
 		try {
 			return super.toArray(generator);
 		} finally {
@@ -194,7 +506,7 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public <T> T[] toArray(T[] a) {
-		lock.readLock().lock();
+		lockRead();
 		try {
 			return super.toArray(a);
 		} finally {
@@ -202,9 +514,164 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 		}
 	}
 	
+	/**
+	 * Copies a range of this list into an array while holding the read lock once.
+	 * <p>
+	 * If the range fits in the given array, it is copied into the start of the array, and the element following
+	 * the range (if any) is set to null, the same as {@link #toArray(Object[])}. Otherwise, a new array of the same type is returned.
+	 * @param fromIndex low endpoint (inclusive) of the range
+	 * @param toIndex high endpoint (exclusive) of the range
+	 * @param dest the array to copy into, if it is big enough
+	 * @return an array containing the elements in the given range
+	 */
+	public E[] copyRange(int fromIndex, int toIndex, E[] dest) {
+		lockRead();
+		try {
+			return super.subList(fromIndex, toIndex).toArray(dest);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns a snapshot of a range of this list.
+	 * <p>
+	 * Unlike {@link #subList(int, int)}, the returned list is a copy rather than a view,
+	 * so it can't race with writers to this list, and changes to it are not reflected in this list.
+	 * @param fromIndex low endpoint (inclusive) of the range
+	 * @param toIndex high endpoint (exclusive) of the range
+	 * @return a new ConcurrentArrayList containing the elements in the given range
+	 */
+	public ConcurrentArrayList<E> snapshotSubList(int fromIndex, int toIndex) {
+		lockRead();
+		try {
+			return new ConcurrentArrayList<>(super.subList(fromIndex, toIndex), snapshot, indexed);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns a view of a range of this list, as {@link ArrayList#subList(int, int)} does.
+	 * <p>
+	 * Every operation on the view takes this list's lock, and changes made through the view go through this list,
+	 * so they are reflected in it (and in its position index, if it has one). As with ArrayList, the view becomes
+	 * unusable once this list is structurally modified other than through the view.
+	 * @param fromIndex low endpoint (inclusive) of the range
+	 * @param toIndex high endpoint (exclusive) of the range
+	 * @return a view of the given range of this list
+	 */
+	@Override
+	public List<E> subList(int fromIndex, int toIndex) {
+		lockRead();
+		try {
+			Objects.checkFromToIndex(fromIndex, toIndex, super.size());
+			return new SubList(fromIndex, toIndex - fromIndex);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	private class SubList extends AbstractList<E> implements RandomAccess {
+		private int offset;
+		private int size;
+		private int expectedModCount;
+		
+		public SubList(int offset, int size) {
+			this.offset = offset;
+			this.size = size;
+			this.expectedModCount = ConcurrentArrayList.this.modCount;
+		}
+		
+		@Override
+		public E get(int index) {
+			lockRead();
+			try {
+				checkForComodification();
+				Objects.checkIndex(index, size);
+				return ConcurrentArrayList.super.get(offset + index);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+		
+		@Override
+		public E set(int index, E element) {
+			lockWrite();
+			try {
+				checkForComodification();
+				Objects.checkIndex(index, size);
+				return ConcurrentArrayList.this.set(offset + index, element);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		
+		@Override
+		public void add(int index, E element) {
+			lockWrite();
+			try {
+				checkForComodification();
+				Objects.checkIndex(index, size + 1);
+				ConcurrentArrayList.this.add(offset + index, element);
+				modified(1);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		
+		@Override
+		public E remove(int index) {
+			lockWrite();
+			try {
+				checkForComodification();
+				Objects.checkIndex(index, size);
+				E e = ConcurrentArrayList.this.remove(offset + index);
+				modified(-1);
+				return e;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		
+		@Override
+		protected void removeRange(int fromIndex, int toIndex) {
+			lockWrite();
+			try {
+				checkForComodification();
+				Objects.checkFromToIndex(fromIndex, toIndex, size);
+				ConcurrentArrayList.this.removeRange(offset + fromIndex, offset + toIndex);
+				modified(fromIndex - toIndex);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+		
+		@Override
+		public int size() {
+			lockRead();
+			try {
+				checkForComodification();
+				return size;
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+		
+		private void modified(int delta) {
+			size += delta;
+			expectedModCount = ConcurrentArrayList.this.modCount;
+			modCount++;
+		}
+		
+		private void checkForComodification() {
+			if (ConcurrentArrayList.this.modCount != expectedModCount) throw new ConcurrentModificationException();
+		}
+	}
+	
 	@Override
 	public String toString() {
-		lock.readLock().lock();
+		lockRead();
 		try {
 			return super.toString();
 		} finally {
@@ -214,9 +681,9 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public boolean add(E e) {
-		lock.writeLock().lock();
+		lockWrite();
 		try {
-			return super.add(e);
+			return append(e);
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -224,9 +691,10 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public void add(int index, E element) {
-		lock.writeLock().lock();
+		lockWrite();
 		try {
 			super.add(index, element);
+			inserted(index, 1);
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -234,9 +702,12 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public boolean addAll(Collection<? extends E> c) {
-		lock.writeLock().lock();
+		lockWrite();
 		try {
-			return super.addAll(c);
+			int start = super.size();
+			boolean changed = super.addAll(c);
+			if (changed) inserted(start, super.size() - start);
+			return changed;
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -244,9 +715,12 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public boolean addAll(int index, Collection<? extends E> c) {
-		lock.writeLock().lock();
+		lockWrite();
 		try {
-			return super.addAll(index, c);
+			int start = super.size();
+			boolean changed = super.addAll(index, c);
+			if (changed) inserted(index, super.size() - start);
+			return changed;
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -254,9 +728,10 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public void clear() {
-		lock.writeLock().lock();
+		lockWrite();
 		try {
 			super.clear();
+			if (positions != null) positions.clear();
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -264,9 +739,12 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public Object clone() {
-		lock.readLock().lock();
+		lockRead();
 		try {
-			return super.clone();
+			@SuppressWarnings("unchecked")
+			ConcurrentArrayList<E> c = (ConcurrentArrayList<E>) super.clone();
+			if (indexed) c.setIndexed(true);
+			return c;
 		} finally {
 			lock.readLock().unlock();
 		}
@@ -274,7 +752,7 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public void ensureCapacity(int minCapacity) {
-		lock.writeLock().lock();
+		lockWrite();
 		try {
 			super.ensureCapacity(minCapacity);
 		} finally {
@@ -284,9 +762,11 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public E remove(int index) {
-		lock.writeLock().lock();
+		lockWrite();
 		try {
-			return super.remove(index);
+			E e = super.remove(index);
+			removed(index, e);
+			return e;
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -294,7 +774,7 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public void trimToSize() {
-		lock.writeLock().lock();
+		lockWrite();
 		try {
 			super.trimToSize();
 		} finally {
@@ -304,9 +784,13 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public boolean remove(Object o) {
-		lock.writeLock().lock();
+		lockWrite();
 		try {
-			return super.remove(o);
+			if (positions == null) return super.remove(o);
+			int index = positions.first(o);
+			if (index < 0) return false;
+			removed(index, super.remove(index));
+			return true;
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -314,9 +798,13 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public boolean removeAll(Collection<?> c) {
-		lock.writeLock().lock();
+		lockWrite();
 		try {
-			return super.removeAll(c);
+			if (positions == null) return super.removeAll(c);
+			Set<?> s = c instanceof Set ? (Set<?>) c : new HashSet<>(c);
+			boolean changed = super.removeIf(s::contains);
+			if (changed) reindex();
+			return changed;
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -324,9 +812,11 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public boolean removeIf(Predicate<? super E> filter) {
-		lock.writeLock().lock();
+		lockWrite();
 		try {
-			return super.removeIf(filter);
+			boolean changed = super.removeIf(filter);
+			if (changed) reindex();
+			return changed;
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -334,9 +824,10 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	protected void removeRange(int fromIndex, int toIndex) {
-		lock.writeLock().lock();
+		lockWrite();
 		try {
 			super.removeRange(fromIndex, toIndex);
+			reindex();
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -344,9 +835,10 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public void replaceAll(UnaryOperator<E> operator) {
-		lock.writeLock().lock();
+		lockWrite();
 		try {
 			super.replaceAll(operator);
+			reindex();
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -354,9 +846,13 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public boolean retainAll(Collection<?> c) {
-		lock.writeLock().lock();
+		lockWrite();
 		try {
-			return super.retainAll(c);
+			if (positions == null) return super.retainAll(c);
+			Set<?> s = c instanceof Set ? (Set<?>) c : new HashSet<>(c);
+			boolean changed = super.removeIf(e -> !s.contains(e));
+			if (changed) reindex();
+			return changed;
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -364,9 +860,9 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public E set(int index, E element) {
-		lock.writeLock().lock();
+		lockWrite();
 		try {
-			return super.set(index, element);
+			return replace(index, element);
 		} finally {
 			lock.writeLock().unlock();
 		}
@@ -374,12 +870,108 @@ public class ConcurrentArrayList<E> extends ArrayList<E> {
 	
 	@Override
 	public void sort(Comparator<? super E> c) {
-		lock.writeLock().lock();
+		lockWrite();
 		try {
 			super.sort(c);
+			reindex();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Appends the given element if it is not already in the list, as a single atomic operation
+	 * @param e the element to add
+	 * @return true if the element was added
+	 */
+	public boolean addIfAbsent(E e) {
+		lockWrite();
+		try {
+			if (has(e)) return false;
+			return append(e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Appends every element of the given collection that is not already in the list, as a single atomic operation.
+	 * Duplicates within the given collection are only added once.
+	 * @param c the elements to add
+	 * @return the number of elements added
+	 */
+	public int addAllAbsent(Collection<? extends E> c) {
+		lockWrite();
+		try {
+			int added = 0;
+			for (E e : c) {
+				if (!has(e)) {
+					append(e);
+					added++;
+				}
+			}
+			return added;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Replaces the element at the given index with the result of the given operator, as a single atomic operation
+	 * @param index the index of the element to replace
+	 * @param operator computes the new element from the current one
+	 * @return the new element
+	 */
+	public E computeAt(int index, UnaryOperator<E> operator) {
+		lockWrite();
+		try {
+			E e = operator.apply(super.get(index));
+			replace(index, e);
+			return e;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Replaces the element at the given index only if it currently equals the expected element, as a single atomic operation.
+	 * Elements are compared with equals(), the same as {@link #contains(Object)}.
+	 * @param index the index of the element to replace
+	 * @param expected the element expected to be at the index
+	 * @param newValue the element to replace it with
+	 * @return true if the element was replaced
+	 */
+	public boolean compareAndSet(int index, E expected, E newValue) {
+		lockWrite();
+		try {
+			if (!Objects.equals(super.get(index), expected)) return false;
+			replace(index, newValue);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Removes every element from this list and adds them to the given collection.
+	 * The list is copied out and cleared under one write lock, and the given collection is filled after the lock is released.
+	 * @param c the collection to move elements into
+	 * @return the number of elements moved
+	 */
+	@SuppressWarnings("unchecked")
+	public int drainTo(Collection<? super E> c) {
+		if (c == this) throw new IllegalArgumentException("Cannot drain a list into itself");
+		Object[] drained;
+		lockWrite();
+		try {
+			drained = super.toArray();
+			super.clear();
+			if (positions != null) positions.clear();
 		} finally {
 			lock.writeLock().unlock();
 		}
+		c.addAll(Arrays.asList((E[]) drained));
+		return drained.length;
 	}
 	
 	@Override
@@ -0,0 +1,31 @@
+package com.meta1203.taskmaster.collections;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder event for a thread waiting on a {@link ConcurrentArrayList}'s lock.
+ * <p>
+ * Only waits longer than the threshold (10 ms unless overridden in the recording's settings) are recorded.
+ * When the event isn't enabled, taking the lock is not timed at all.
+ */
+@Name("com.meta1203.taskmaster.collections.LockWait")
+@Label("ConcurrentArrayList Lock Wait")
+@Category({"TaskMaster", "Collections"})
+@Description("A thread waited to acquire a ConcurrentArrayList's read or write lock")
+@Threshold("10 ms")
+class LockWaitEvent extends Event {
+	static final EventType TYPE = EventType.getEventType(LockWaitEvent.class);
+	
+	@Label("Write Lock")
+	@Description("True if waiting for the write lock, false for the read lock")
+	boolean write;
+	
+	@Label("List Size")
+	int size;
+}
@@ -0,0 +1,275 @@
+package com.meta1203.taskmaster.collections;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An append-only list that stores its elements as bytes outside the Java heap.
+ * <p>
+ * Elements are encoded with a {@link BinaryCodec} into direct {@link ByteBuffer} segments. Once the given
+ * memory threshold has been allocated, further segments are memory-mapped from a temporary file instead,
+ * so the list can grow past available memory. Only an 8 byte offset per element stays on the heap.
+ * <p>
+ * Like {@link ConcurrentArrayList}, reads hold a read lock and appends hold a write lock.
+ * Iterators are snapshots that read the segments directly without copying or locking, and don't see
+ * elements added after they were created.
+ * <p>
+ * Elements can't be replaced or removed individually; use {@link #clear()} to drop everything, and
+ * {@link #close()} to delete the spill file.
+ *
+ * @param <E> the type of elements in this list
+ */
+public class OffHeapList<E> extends AbstractList<E> implements Closeable {
+	private static final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() -> ByteBuffer.allocate(256));
+	
+	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	private BinaryCodec<E> codec;
+	private int segmentSize;
+	private long memoryThreshold;
+	private Path spillDirectory;
+	
+	private List<ByteBuffer> segments = new ArrayList<>();
+	private long allocated;
+	private FileChannel spill;
+	private long spilled;
+	private long[] offsets = new long[16];
+	private int size;
+	
+	/**
+	 * Creates a new, empty OffHeapList with 1 MiB segments that spills to the temporary directory after 64 MiB
+	 * @param codec the {@link BinaryCodec} used to store elements
+	 */
+	public OffHeapList(BinaryCodec<E> codec) {
+		this(codec, 1 << 20, 64L << 20, Paths.get(System.getProperty("java.io.tmpdir")));
+	}
+	
+	/**
+	 * Creates a new, empty OffHeapList
+	 * @param codec the {@link BinaryCodec} used to store elements
+	 * @param segmentSize the size in bytes of each segment; elements bigger than this get a segment of their own
+	 * @param memoryThreshold how many bytes of direct memory to use before spilling to a file
+	 * @param spillDirectory the directory to create the spill file in
+	 */
+	public OffHeapList(BinaryCodec<E> codec, int segmentSize, long memoryThreshold, Path spillDirectory) {
+		if (segmentSize < 8) throw new IllegalArgumentException("segmentSize must be at least 8 bytes");
+		this.codec = codec;
+		this.segmentSize = segmentSize;
+		this.memoryThreshold = memoryThreshold;
+		this.spillDirectory = spillDirectory;
+	}
+	
+	@Override
+	public boolean add(E e) {
+		ByteBuffer encoded = encode(e);
+		int need = Integer.BYTES + (encoded == null ? 0 : encoded.remaining());
+		lock.writeLock().lock();
+		try {
+			ByteBuffer seg = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+			if (seg == null || seg.remaining() < need) seg = newSegment(Math.max(segmentSize, need));
+			int pos = seg.position();
+			if (encoded == null) {
+				seg.putInt(-1);
+			} else {
+				seg.putInt(encoded.remaining());
+				seg.put(encoded);
+			}
+			if (size == offsets.length) offsets = Arrays.copyOf(offsets, size * 2);
+			offsets[size++] = ((long) (segments.size() - 1) << 32) | pos;
+			modCount++;
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	@Override
+	public E get(int index) {
+		lock.readLock().lock();
+		try {
+			if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+			long offset = offsets[index];
+			return decode(segments.get((int) (offset >>> 32)), (int) offset);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return The number of bytes of segments allocated, both in direct memory and spilled to file
+	 */
+	public long allocatedBytes() {
+		lock.readLock().lock();
+		try {
+			return allocated;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * @return The number of bytes of segments spilled to file
+	 */
+	public long spilledBytes() {
+		lock.readLock().lock();
+		try {
+			return spilled;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			release();
+			modCount++;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Drops every element and deletes the spill file, if there is one.
+	 * The list may still be used afterwards.
+	 */
+	@Override
+	public void close() {
+		clear();
+	}
+	
+	@Override
+	public Iterator<E> iterator() {
+		lock.readLock().lock();
+		try {
+			return new SnapshotItr(segments.toArray(new ByteBuffer[0]), offsets, size);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Must hold the write lock.
+	 */
+	private void release() {
+		// existing iterators keep their own references to the old segments, so they are replaced rather than reused
+		segments = new ArrayList<>();
+		offsets = new long[16];
+		size = 0;
+		allocated = 0;
+		spilled = 0;
+		if (spill != null) {
+			try {
+				spill.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				spill = null;
+			}
+		}
+	}
+	
+	/**
+	 * Must hold the write lock.
+	 */
+	private ByteBuffer newSegment(int capacity) {
+		ByteBuffer seg;
+		if (allocated + capacity <= memoryThreshold) {
+			seg = ByteBuffer.allocateDirect(capacity);
+		} else {
+			try {
+				if (spill == null) {
+					Path file = Files.createTempFile(spillDirectory, "offheaplist", ".bin");
+					spill = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+				}
+				seg = spill.map(FileChannel.MapMode.READ_WRITE, spilled, capacity);
+				spilled += capacity;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		allocated += capacity;
+		segments.add(seg);
+		return seg;
+	}
+	
+	/**
+	 * Encodes an element into this thread's scratch buffer
+	 * @return The scratch buffer, flipped for reading, or null if e is null
+	 */
+	private ByteBuffer encode(E e) {
+		if (e == null) return null;
+		ByteBuffer scratch = SCRATCH.get();
+		for (;;) {
+			scratch.clear();
+			try {
+				codec.encode(e, scratch);
+				scratch.flip();
+				return scratch;
+			} catch (BufferOverflowException ex) {
+				scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+				SCRATCH.set(scratch);
+			}
+		}
+	}
+	
+	private E decode(ByteBuffer seg, int pos) {
+		int length = seg.getInt(pos);
+		if (length < 0) return null;
+		ByteBuffer b = seg.duplicate();
+		b.limit(pos + Integer.BYTES + length);
+		b.position(pos + Integer.BYTES);
+		return codec.decode(b);
+	}
+	
+	private class SnapshotItr implements Iterator<E> {
+		private ByteBuffer[] segments;
+		private long[] offsets;
+		private int size;
+		private int pointer = 0;
+		
+		public SnapshotItr(ByteBuffer[] segments, long[] offsets, int size) {
+			this.segments = segments;
+			this.offsets = offsets;
+			this.size = size;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return pointer < size;
+		}
+		
+		@Override
+		public E next() {
+			if (pointer >= size) throw new NoSuchElementException();
+			long offset = offsets[pointer++];
+			return decode(segments[(int) (offset >>> 32)], (int) offset);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.meta1203.taskmaster.collections;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Maps each element of a list to the sorted positions it occurs at.
+ * Used by {@link ConcurrentArrayList} in indexed mode; not thread safe on its own.
+ */
+class PositionIndex {
+	private HashMap<Object, Positions> map;
+	
+	public PositionIndex(int capacity) {
+		map = new HashMap<>(Math.max(16, (int) (capacity / 0.75f) + 1));
+	}
+	
+	public void clear() {
+		map.clear();
+	}
+	
+	public boolean contains(Object o) {
+		return map.containsKey(o);
+	}
+	
+	public int first(Object o) {
+		Positions p = map.get(o);
+		return p == null ? -1 : p.a[0];
+	}
+	
+	public int last(Object o) {
+		Positions p = map.get(o);
+		return p == null ? -1 : p.a[p.n - 1];
+	}
+	
+	public void add(Object o, int position) {
+		Positions p = map.get(o);
+		if (p == null) map.put(o, new Positions(position));
+		else p.add(position);
+	}
+	
+	public void remove(Object o, int position) {
+		Positions p = map.get(o);
+		if (p != null && p.remove(position) && p.n == 0) map.remove(o);
+	}
+	
+	/**
+	 * Records that the given element moved from one position to another,
+	 * without any other position of that element moving past it
+	 */
+	public void move(Object o, int from, int to) {
+		Positions p = map.get(o);
+		if (p != null) p.move(from, to);
+	}
+	
+	private static class Positions {
+		private int[] a;
+		private int n;
+		
+		public Positions(int position) {
+			a = new int[] {position};
+			n = 1;
+		}
+		
+		public void add(int position) {
+			// positions are usually appended in order, so check the end first
+			int at = n == 0 || a[n - 1] < position ? n : insertionPoint(position);
+			if (n == a.length) a = Arrays.copyOf(a, n * 2);
+			System.arraycopy(a, at, a, at + 1, n - at);
+			a[at] = position;
+			n++;
+		}
+		
+		public boolean remove(int position) {
+			int at = Arrays.binarySearch(a, 0, n, position);
+			if (at < 0) return false;
+			System.arraycopy(a, at + 1, a, at, n - at - 1);
+			n--;
+			return true;
+		}
+		
+		public void move(int from, int to) {
+			int at = Arrays.binarySearch(a, 0, n, from);
+			if (at >= 0) a[at] = to;
+		}
+		
+		private int insertionPoint(int position) {
+			int at = Arrays.binarySearch(a, 0, n, position);
+			return at < 0 ? -(at + 1) : at;
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package com.meta1203.taskmaster.collections;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free queue for handing elements between producer and consumer Tasks.
+ * <p>
+ * Any number of threads may offer and poll at once. Each slot has a sequence number that tells producers
+ * and consumers whether it is free or filled, so claiming a slot only takes a CAS on the head or tail,
+ * and the head and tail are padded so that producers and consumers don't contend for the same cache line.
+ * The capacity is rounded up to a power of two and never changes.
+ * <p>
+ * Instead of blocking, callers can register a callback to run once the buffer may have room or may have
+ * elements; {@link com.meta1203.taskmaster.Task#send(RingBuffer, Object)} and
+ * {@link com.meta1203.taskmaster.Task#receive(RingBuffer)} use these to wait without holding a thread.
+ *
+ * @param <E> the type of elements in this buffer
+ */
+public class RingBuffer<E> {
+	private Object[] elements;
+	private AtomicLongArray sequences;
+	private int mask;
+	private Sequence head = new Sequence();
+	private Sequence tail = new Sequence();
+	private Queue<Runnable> notEmpty = new ConcurrentLinkedQueue<>();
+	private Queue<Runnable> notFull = new ConcurrentLinkedQueue<>();
+	
+	/**
+	 * Creates a new, empty RingBuffer
+	 * @param capacity the minimum number of elements the buffer can hold, rounded up to a power of two
+	 */
+	public RingBuffer(int capacity) {
+		if (capacity < 1 || capacity > 1 << 30) throw new IllegalArgumentException("Illegal capacity: " + capacity);
+		int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+		this.elements = new Object[size];
+		this.sequences = new AtomicLongArray(size);
+		this.mask = size - 1;
+		for (int x = 0; x < size; x++) {
+			sequences.set(x, x);
+		}
+	}
+	
+	/**
+	 * Adds the given element to the tail of the buffer, if there is room
+	 * @param e the element to add
+	 * @return false if the buffer is full
+	 */
+	public boolean offer(E e) {
+		Objects.requireNonNull(e);
+		long pos = tail.get();
+		int i;
+		for (;;) {
+			i = (int) pos & mask;
+			long dif = sequences.get(i) - pos;
+			if (dif == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) break;
+				pos = tail.get();
+			} else if (dif < 0) {
+				return false;
+			} else {
+				pos = tail.get();
+			}
+		}
+		elements[i] = e;
+		sequences.set(i, pos + 1);
+		signal(notEmpty);
+		return true;
+	}
+	
+	/**
+	 * Removes the element at the head of the buffer
+	 * @return the element, or null if the buffer is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		long pos = head.get();
+		int i;
+		for (;;) {
+			i = (int) pos & mask;
+			long dif = sequences.get(i) - (pos + 1);
+			if (dif == 0) {
+				if (head.compareAndSet(pos, pos + 1)) break;
+				pos = head.get();
+			} else if (dif < 0) {
+				return null;
+			} else {
+				pos = head.get();
+			}
+		}
+		E e = (E) elements[i];
+		elements[i] = null;
+		sequences.set(i, pos + mask + 1);
+		signal(notFull);
+		return e;
+	}
+	
+	/**
+	 * Removes every available element and adds them to the given collection
+	 * @see #drainTo(Collection, int)
+	 */
+	public int drainTo(Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Removes up to the given number of elements and adds them to the given collection, in order.
+	 * <p>
+	 * The elements that are ready are claimed together with a single update of the head,
+	 * so consumers that drain in batches don't contend once per element.
+	 * @param c the collection to add the elements to
+	 * @param max the maximum number of elements to remove
+	 * @return the number of elements removed
+	 */
+	@SuppressWarnings("unchecked")
+	public int drainTo(Collection<? super E> c, int max) {
+		long pos;
+		int n;
+		do {
+			pos = head.get();
+			int limit = Math.min(max, mask + 1);
+			for (n = 0; n < limit; n++) {
+				if (sequences.get((int) (pos + n) & mask) != pos + n + 1) break;
+			}
+			if (n == 0) return 0;
+		} while (!head.compareAndSet(pos, pos + n));
+		// release every claimed slot before handing anything to c, so a failing c can't wedge the buffer
+		Object[] drained = new Object[n];
+		for (int x = 0; x < n; x++) {
+			int i = (int) (pos + x) & mask;
+			drained[x] = elements[i];
+			elements[i] = null;
+			sequences.set(i, pos + x + mask + 1);
+		}
+		for (int x = 0; x < n; x++) {
+			signal(notFull);
+		}
+		for (Object e : drained) {
+			c.add((E) e);
+		}
+		return n;
+	}
+	
+	/**
+	 * Runs the given callback once the buffer may have elements to poll.
+	 * <p>
+	 * One waiting callback is woken per element added (or immediately if the buffer isn't empty). It runs once,
+	 * on the thread that added the element, so it should be short; an exception it throws is printed and the
+	 * wakeup goes to the next callback instead. It isn't guaranteed that an element is still there by the time
+	 * it tries to poll, so it should register again if it finds the buffer empty. A callback that is woken but
+	 * decides not to poll, for example because its Task was cancelled, must call {@link #signalNotEmpty()}
+	 * so the wakeup isn't lost.
+	 * @param callback what to run when the buffer isn't empty
+	 */
+	public void whenNotEmpty(Runnable callback) {
+		notEmpty.add(callback);
+		if (!isEmpty()) signal(notEmpty);
+	}
+	
+	/**
+	 * Runs the given callback once the buffer may have room for an element.
+	 * @see #whenNotEmpty(Runnable)
+	 * @param callback what to run when the buffer isn't full
+	 */
+	public void whenNotFull(Runnable callback) {
+		notFull.add(callback);
+		if (!isFull()) signal(notFull);
+	}
+	
+	/**
+	 * Passes a wakeup on to the next callback registered with {@link #whenNotEmpty(Runnable)}, if the buffer isn't empty
+	 */
+	public void signalNotEmpty() {
+		if (!isEmpty()) signal(notEmpty);
+	}
+	
+	/**
+	 * Passes a wakeup on to the next callback registered with {@link #whenNotFull(Runnable)}, if the buffer isn't full
+	 */
+	public void signalNotFull() {
+		if (!isFull()) signal(notFull);
+	}
+	
+	/**
+	 * Wakes one waiter, skipping any whose callback throws
+	 */
+	private void signal(Queue<Runnable> waiters) {
+		Runnable r;
+		while ((r = waiters.poll()) != null) {
+			try {
+				r.run();
+				return;
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of elements in the buffer, which may already be out of date
+	 */
+	public int size() {
+		long h = head.get();
+		long t = tail.get();
+		return (int) Math.max(0, Math.min(mask + 1, t - h));
+	}
+	
+	public boolean isEmpty() {
+		return tail.get() <= head.get();
+	}
+	
+	public boolean isFull() {
+		return tail.get() - head.get() > mask;
+	}
+	
+	/**
+	 * @return the maximum number of elements the buffer can hold
+	 */
+	public int capacity() {
+		return mask + 1;
+	}
+	
+	/**
+	 * An AtomicLong padded out to a cache line, so the head and tail don't share one.
+	 */
+	@SuppressWarnings({ "serial", "unused" })
+	private static class Sequence extends AtomicLong {
+		private long p1, p2, p3, p4, p5, p6, p7;
+	}
+}
@@ -1,14 +1,45 @@
 package com.meta1203.taskmaster;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import com.meta1203.taskmaster.collections.BinaryCodec;
 import com.meta1203.taskmaster.collections.ConcurrentArrayList;
+import com.meta1203.taskmaster.collections.OffHeapList;
+import com.meta1203.taskmaster.collections.RingBuffer;
 
 public class TaskTest {
 	private static List<String> c = Arrays.asList("first", "second", "third", "final");
@@ -137,6 +168,583 @@ public class TaskTest {
 		Assertions.fail();
 	}
 
+	@Test
+	void completionOrder() {
+		Task<Integer> first = Task.execute(() -> {
+			sleep(100);
+			return 1;
+		});
+		Task<Integer> second = first.then((Integer x) -> x + 1);
+		Task<Integer> third = second.then((Integer x) -> x + 1);
+		List<Task<Integer>> tasks = new ConcurrentArrayList<>(Arrays.asList(third, second, first));
+		tasks.add(Task.execute(() -> {
+			throw new RuntimeException("never arrives");
+		}));
+		
+		List<Integer> results = new ConcurrentArrayList<>();
+		try {
+			Task.completionStream(tasks).forEach(results::add);
+			Assertions.fail();
+		} catch (RuntimeException ex) {
+			Assertions.assertTrue(ex.getCause() instanceof GroupTaskException);
+		}
+		Assertions.assertEquals(Arrays.asList(1, 2, 3), results);
+		
+		Task<Integer> cancelled = Task.schedule(Duration.ofHours(1), () -> 0);
+		cancelled.cancel();
+		Iterator<Integer> it = Task.completionIterator(Arrays.asList(cancelled, Task.execute(() -> 5)));
+		Assertions.assertEquals(5, it.next());
+		RuntimeException ex = Assertions.assertThrows(RuntimeException.class, it::hasNext);
+		Assertions.assertTrue(ex.getCause() instanceof GroupTaskException);
+	}
+
+	@Test
+	void processorBackpressure() {
+		TaskProcessor<Integer, Integer> processor = new TaskProcessor<>((Integer x) -> x * 2, 4);
+		List<Integer> results = new ConcurrentArrayList<>();
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		processor.subscribe(new Flow.Subscriber<Integer>() {
+			private Flow.Subscription s;
+			
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				s = subscription;
+				s.request(1);
+			}
+			
+			@Override
+			public void onNext(Integer item) {
+				results.add(item);
+				s.request(1);
+			}
+			
+			@Override
+			public void onError(Throwable throwable) {
+				done.completeExceptionally(throwable);
+			}
+			
+			@Override
+			public void onComplete() {
+				done.complete(null);
+			}
+		});
+		
+		try (SubmissionPublisher<Integer> publisher = new SubmissionPublisher<>()) {
+			publisher.subscribe(processor);
+			for (int x = 0; x < 100; x++) publisher.submit(x);
+		}
+		done.join();
+		
+		Assertions.assertEquals(100, results.size());
+		for (int x = 0; x < 100; x++) Assertions.assertEquals(x * 2, results.get(x));
+	}
+
+	@Test
+	void graph() {
+		List<String> order = new ConcurrentArrayList<>();
+		Map<String, Object> results = new TaskGraph(1)
+				.add("short", () -> order.add("short"))
+				.add("long", () -> order.add("long"))
+				.add("after", 3, () -> order.add("after"), "long")
+				.add("last", () -> order.add("last"), "after", "short")
+				.run().awaitUnsafe();
+		Assertions.assertEquals(4, results.size());
+		Assertions.assertEquals(Arrays.asList("long", "after", "short", "last"), order);
+		
+		try {
+			new TaskGraph()
+					.add("broken", () -> { throw new RuntimeException("nope"); })
+					.add("skipped", () -> "never", "broken")
+					.run().awaitUnsafe();
+			Assertions.fail();
+		} catch (RuntimeException ex) {
+			Assertions.assertTrue(ex.getCause() instanceof MultiException);
+			Assertions.assertEquals(2, ((MultiException) ex.getCause()).getCauses().size());
+		}
+		
+		Assertions.assertThrows(IllegalStateException.class, () -> new TaskGraph()
+				.add("a", () -> 1, "b")
+				.add("b", () -> 2, "a")
+				.run());
+	}
+
+	@Test
+	void priorityOrder() {
+		List<Runnable> drainers = new ConcurrentArrayList<>();
+		PriorityExecutor pe = new PriorityExecutor(drainers::add, TimeUnit.SECONDS.toNanos(10));
+		List<String> order = new ConcurrentArrayList<>();
+		pe.execute(Priority.LOW, () -> order.add("low"));
+		pe.execute(Priority.NORMAL, () -> order.add("normal"));
+		pe.execute(Priority.HIGH, () -> order.add("high"));
+		
+		Assertions.assertEquals(3, drainers.size());
+		drainers.remove(0).run();
+		Assertions.assertEquals(Arrays.asList("high"), order);
+		drainers.forEach(Runnable::run);
+		Assertions.assertEquals(Arrays.asList("high", "normal", "low"), order);
+		
+		int result = Task.execute(Priority.HIGH, () -> 20).then((Integer x) -> x + 1).awaitUnsafe();
+		Assertions.assertEquals(21, result);
+		
+		// prioritized Tasks awaiting prioritized Tasks must not run out of drainers
+		List<Task<Integer>> nested = new ArrayList<>();
+		for (int x = 0; x < Runtime.getRuntime().availableProcessors() * 2; x++) {
+			nested.add(Task.execute(Priority.HIGH, () -> Task.execute(Priority.HIGH, () -> 1).awaitUnsafe()));
+		}
+		for (Task<Integer> t : nested) Assertions.assertEquals(1, t.awaitUnsafe());
+	}
+
+	@Test
+	void rateLimit() {
+		RateLimiter rl = new RateLimiter(20, 2, Duration.ofMillis(200));
+		List<Task<Void>> tasks = new ConcurrentArrayList<>();
+		long start = System.nanoTime();
+		for (int x = 0; x < 6; x++) {
+			tasks.add(Task.rateLimited(rl, () -> {}));
+		}
+		Assertions.assertEquals(4, rl.getQueued());
+		Task.awaitAllUnsafe(tasks);
+		Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(190));
+		Assertions.assertEquals(0, rl.getQueued());
+		
+		RateLimiter strict = new RateLimiter(1, 1, Duration.ZERO);
+		Task.rateLimited(strict, () -> {}).awaitUnsafe();
+		Assertions.assertThrows(RuntimeException.class, () -> Task.rateLimited(strict, () -> {}).awaitUnsafe());
+		Assertions.assertEquals(1, strict.getRejected());
+		
+		RateLimiter slow = new RateLimiter(1, 1);
+		Task.rateLimited(slow, () -> {}).awaitUnsafe();
+		Task<Void> waiting = Task.rateLimited(slow, () -> {});
+		Assertions.assertEquals(1, slow.getQueued());
+		waiting.cancel();
+		Assertions.assertEquals(0, slow.getQueued());
+	}
+
+	@Test
+	void batcher() {
+		AtomicInteger calls = new AtomicInteger();
+		TaskBatcher<Integer, String> batcher = new TaskBatcher<>((List<Integer> keys) -> {
+			calls.incrementAndGet();
+			Map<Integer, String> results = new HashMap<>();
+			for (Integer k : keys) {
+				if (k != 13) results.put(k, "#" + k);
+			}
+			return results;
+		}, 3, Duration.ofMillis(50));
+		
+		Task<String> one = batcher.submit(1);
+		Task<String> two = batcher.submit(2);
+		Task<String> three = batcher.submit(3);
+		Assertions.assertEquals("#1", one.awaitUnsafe());
+		Assertions.assertEquals("#2", two.awaitUnsafe());
+		Assertions.assertEquals("#3", three.awaitUnsafe());
+		Assertions.assertEquals(1, calls.get());
+		
+		Task<String> lonely = batcher.submit(4);
+		Task<String> unlucky = batcher.submit(13);
+		Assertions.assertEquals("#4", lonely.awaitUnsafe());
+		Assertions.assertThrows(RuntimeException.class, unlucky::awaitUnsafe);
+		Assertions.assertEquals(2, calls.get());
+		
+		TaskBatcher<Integer, String> rows = TaskBatcher.perKey((List<Integer> keys) -> {
+			Map<Integer, CompletableFuture<String>> results = new HashMap<>();
+			for (Integer k : keys) {
+				results.put(k, k < 0 ? CompletableFuture.failedFuture(new IllegalArgumentException("rejected " + k))
+						: CompletableFuture.completedFuture("row " + k));
+			}
+			return results;
+		}, 2, Duration.ofMillis(50));
+		Task<String> good = rows.submit(7);
+		Task<String> bad = rows.submit(-7);
+		Assertions.assertEquals("row 7", good.awaitUnsafe());
+		Assertions.assertEquals("rejected -7", Assertions.assertThrows(IllegalArgumentException.class, bad::await).getMessage());
+	}
+
+	@Test
+	void pipeline() {
+		Function<String, Task<Integer>> p = Task.pipeline((String s) -> Integer.parseInt(s))
+				.then((Integer x) -> x * 2)
+				.handle((Throwable th) -> -1)
+				.then((Integer x) -> x + 1)
+				.build();
+		Assertions.assertEquals(43, p.apply("21").awaitUnsafe());
+		Assertions.assertEquals(0, p.apply("twenty-one").awaitUnsafe());
+	}
+
+	@Test
+	void calRange() {
+		ConcurrentArrayList<Integer> l = new ConcurrentArrayList<>(Arrays.asList(0, 1, 2, 3, 4, 5));
+		Integer[] page = l.copyRange(2, 5, new Integer[3]);
+		Assertions.assertArrayEquals(new Integer[] {2, 3, 4}, page);
+		
+		List<Integer> sub = l.snapshotSubList(1, 3);
+		l.set(1, 10);
+		Assertions.assertEquals(Arrays.asList(1, 2), sub);
+		
+		List<Integer> view = l.subList(1, 4);
+		Assertions.assertEquals(Arrays.asList(10, 2, 3), view);
+		view.clear();
+		Assertions.assertEquals(Arrays.asList(0, 4, 5), l);
+		view.add(7);
+		Assertions.assertEquals(Arrays.asList(0, 7, 4, 5), l);
+	}
+
+	@Test
+	void calCompound() {
+		ConcurrentArrayList<Integer> l = new ConcurrentArrayList<>(Arrays.asList(1, 2));
+		Assertions.assertFalse(l.addIfAbsent(1));
+		Assertions.assertTrue(l.addIfAbsent(3));
+		Assertions.assertEquals(1, l.addAllAbsent(Arrays.asList(3, 4, 4)));
+		Assertions.assertEquals(20, l.computeAt(1, x -> x * 10));
+		Assertions.assertFalse(l.compareAndSet(0, 5, 6));
+		Assertions.assertTrue(l.compareAndSet(0, 1, 6));
+		
+		List<Integer> drained = new ArrayList<>();
+		Assertions.assertEquals(4, l.drainTo(drained));
+		Assertions.assertEquals(Arrays.asList(6, 20, 3, 4), drained);
+		Assertions.assertTrue(l.isEmpty());
+	}
+
+	@Test
+	void calIndexed() {
+		ConcurrentArrayList<Integer> indexed = new ConcurrentArrayList<>(false, true);
+		List<Integer> plain = new ArrayList<>();
+		Random r = new Random(1203);
+		for (int x = 0; x < 2000; x++) {
+			int v = r.nextInt(50);
+			int i = plain.isEmpty() ? 0 : r.nextInt(plain.size());
+			switch (r.nextInt(6)) {
+			case 0:
+				indexed.add(i, v);
+				plain.add(i, v);
+				break;
+			case 1:
+				if (!plain.isEmpty()) Assertions.assertEquals(plain.remove(i), indexed.remove(i));
+				break;
+			case 2:
+				Assertions.assertEquals(plain.remove((Integer) v), indexed.remove((Integer) v));
+				break;
+			case 3:
+				if (!plain.isEmpty()) Assertions.assertEquals(plain.set(i, v), indexed.set(i, v));
+				break;
+			default:
+				indexed.add(v);
+				plain.add(v);
+			}
+			Assertions.assertEquals(plain.indexOf(v), indexed.indexOf(v));
+			Assertions.assertEquals(plain.lastIndexOf(v), indexed.lastIndexOf(v));
+		}
+		Assertions.assertEquals(plain, indexed);
+		
+		List<Integer> evens = Arrays.asList(0, 2, 4, 6, 8, 10);
+		plain.removeAll(evens);
+		indexed.removeAll(evens);
+		Assertions.assertEquals(plain, indexed);
+		Assertions.assertFalse(indexed.contains(4));
+		Assertions.assertEquals(plain.indexOf(5), indexed.indexOf(5));
+	}
+
+	@Test
+	void offHeap() throws IOException {
+		Path dir = Files.createTempDirectory("taskmaster");
+		try (OffHeapList<String> l = new OffHeapList<>(BinaryCodec.ofString(), 64, 256, dir)) {
+			for (int x = 0; x < 1000; x++) {
+				l.add(x % 100 == 0 ? null : "element " + x);
+			}
+			Assertions.assertEquals(1000, l.size());
+			Assertions.assertEquals("element 999", l.get(999));
+			Assertions.assertNull(l.get(500));
+			Assertions.assertTrue(l.spilledBytes() > 0);
+			
+			int count = 0;
+			for (String e : l) {
+				if (count < 5) l.add("late");
+				Assertions.assertEquals(count % 100 == 0 ? null : "element " + count, e);
+				count++;
+			}
+			Assertions.assertEquals(1000, count);
+		}
+		Files.delete(dir);
+	}
+
+	@Test
+	void durableGroup() throws IOException {
+		Path dir = Files.createTempDirectory("taskmaster");
+		Path journal = dir.resolve("group.journal");
+		AtomicInteger runs = new AtomicInteger();
+		
+		try (DurableTaskGroup<String> group = new DurableTaskGroup<>(journal, BinaryCodec.ofString(), 1)) {
+			List<Task<String>> tasks = new ConcurrentArrayList<>();
+			tasks.add(group.execute("a", () -> counted(runs, "A")));
+			tasks.add(group.execute("b", () -> counted(runs, "B")));
+			tasks.add(group.execute("c", () -> {
+				throw new RuntimeException("crashed halfway");
+			}));
+			Assertions.assertThrows(RuntimeException.class, () -> Task.awaitAllUnsafe(tasks));
+		}
+		
+		try (DurableTaskGroup<String> group = new DurableTaskGroup<>(journal, BinaryCodec.ofString())) {
+			Assertions.assertEquals(2, group.completedCount());
+			Assertions.assertEquals("A", group.execute("a", () -> counted(runs, "A")).awaitUnsafe());
+			Assertions.assertEquals("C", group.execute("c", () -> counted(runs, "C")).awaitUnsafe());
+			group.compact();
+			Assertions.assertEquals(3, group.completedCount());
+		}
+		
+		try (DurableTaskGroup<String> group = new DurableTaskGroup<>(journal, BinaryCodec.ofString())) {
+			Assertions.assertEquals(3, group.completedCount());
+			Assertions.assertEquals("B", group.execute("b", () -> "unused").awaitUnsafe());
+		}
+		Assertions.assertEquals(3, runs.get());
+		
+		Files.delete(journal);
+		Files.delete(dir);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void calSerialization() throws IOException, ClassNotFoundException {
+		ConcurrentArrayList<String> l = new ConcurrentArrayList<>(false, true);
+		for (int x = 0; x < 20000; x++) {
+			l.add(x % 1000 == 0 ? null : "element " + x);
+		}
+		l.add("x".repeat(100000));
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(l);
+		}
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			ConcurrentArrayList<String> copy = (ConcurrentArrayList<String>) in.readObject();
+			Assertions.assertEquals(l, copy);
+			Assertions.assertTrue(copy.isIndexed());
+			Assertions.assertEquals(1999, copy.indexOf("element 1999"));
+		}
+		
+		Path file = Files.createTempFile("taskmaster", ".bin");
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			Assertions.assertEquals(l.size(), l.writeTo(ch, BinaryCodec.ofString()));
+		}
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			Assertions.assertEquals(l, ConcurrentArrayList.readFrom(ch, BinaryCodec.ofString()));
+		}
+		Files.delete(file);
+	}
+
+	@Test
+	void divide() {
+		long sum = Task.divide(new int[] {1, 100000},
+				(int[] range) -> range[1] - range[0] < 1000,
+				(int[] range) -> {
+					long s = 0;
+					for (int x = range[0]; x <= range[1]; x++) s += x;
+					return s;
+				},
+				(int[] range) -> {
+					int mid = (range[0] + range[1]) / 2;
+					return Arrays.asList(new int[] {range[0], mid}, new int[] {mid + 1, range[1]});
+				},
+				Long::sum).awaitUnsafe();
+		Assertions.assertEquals(5000050000L, sum);
+		
+		String joined = Task.divide("abcdefgh",
+				(String str) -> str.length() == 1,
+				(String str) -> str,
+				(String str) -> Arrays.asList(str.substring(0, str.length() / 2), str.substring(str.length() / 2)),
+				(String a, String b) -> a + b).awaitUnsafe();
+		Assertions.assertEquals("abcdefgh", joined);
+	}
+
+	@Test
+	void scheduled() {
+		long start = System.nanoTime();
+		Assertions.assertEquals("late", Task.schedule(Duration.ofMillis(50), () -> "late").awaitUnsafe());
+		Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+		
+		AtomicInteger ran = new AtomicInteger();
+		Task<Void> never = Task.schedule(Duration.ofMillis(50), () -> {
+			ran.incrementAndGet();
+		});
+		Assertions.assertTrue(never.cancel());
+		
+		AtomicInteger ticks = new AtomicInteger();
+		Task<Void> periodic = Task.every(Duration.ofMillis(20), () -> {
+			ticks.incrementAndGet();
+		});
+		sleep(150);
+		periodic.cancel();
+		sleep(30); // let a run that had already started finish
+		int seen = ticks.get();
+		Assertions.assertTrue(seen >= 3, "only ticked " + seen + " times");
+		sleep(100);
+		Assertions.assertEquals(seen, ticks.get());
+		Assertions.assertEquals(0, ran.get());
+		
+		Task<Void> failing = Task.every(Duration.ofMillis(20), () -> {
+			throw new RuntimeException("stop");
+		}, true);
+		Assertions.assertThrows(RuntimeException.class, failing::awaitUnsafe);
+	}
+
+	@Test
+	void keyed() {
+		Map<String, List<Integer>> seen = new HashMap<>();
+		List<Task<Void>> tasks = new ConcurrentArrayList<>();
+		for (String account : Arrays.asList("alice", "bob", "carol")) {
+			seen.put(account, new ArrayList<>()); // only touched by one Task at a time
+		}
+		for (int x = 0; x < 500; x++) {
+			final int y = x;
+			for (String account : seen.keySet()) {
+				tasks.add(Task.executeKeyed(account, () -> {
+					seen.get(account).add(y);
+				}));
+			}
+		}
+		Task.awaitAllUnsafe(tasks);
+		for (List<Integer> l : seen.values()) {
+			Assertions.assertEquals(500, l.size());
+			for (int x = 0; x < 500; x++) Assertions.assertEquals(x, l.get(x));
+		}
+	}
+
+	@Test
+	void flightRecorder() throws IOException {
+		Path file = Files.createTempFile("taskmaster", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable("com.meta1203.taskmaster.TaskCompleted");
+			recording.enable("com.meta1203.taskmaster.TaskFailed");
+			recording.start();
+			Task.execute(() -> 1).then((Integer x) -> x + 1).awaitUnsafe();
+			Task.execute(() -> {
+				throw new RuntimeException("recorded");
+			}).handle((Throwable th) -> {}).awaitUnsafe();
+			recording.stop();
+			recording.dump(file);
+		}
+		
+		Map<Long, List<String>> chains = new HashMap<>();
+		int failed = 0;
+		for (RecordedEvent e : RecordingFile.readAllEvents(file)) {
+			if (e.getEventType().getName().endsWith("TaskFailed")) failed++;
+			else chains.computeIfAbsent(e.getLong("chainId"), k -> new ArrayList<>()).add(e.getString("stage"));
+		}
+		Files.delete(file);
+		Assertions.assertEquals(1, failed);
+		Assertions.assertTrue(chains.values().stream().anyMatch(stages -> stages.containsAll(Arrays.asList("execute", "then"))));
+	}
+
+	@Test
+	void nestedAwait() {
+		long before = Task.getBlockingAwaitCount();
+		List<Task<Integer>> outer = new ArrayList<>();
+		for (int x = 0; x < 8; x++) {
+			final int y = x;
+			outer.add(Task.execute(() -> Task.execute(() -> {
+				sleep(50);
+				return y;
+			}).awaitUnsafe() * 2));
+		}
+		int sum = 0;
+		for (Task<Integer> t : outer) sum += t.awaitUnsafe();
+		Assertions.assertEquals(56, sum);
+		Assertions.assertTrue(Task.getBlockingAwaitCount() > before);
+	}
+
+	@Test
+	void ringBuffer() {
+		RingBuffer<Integer> rb = new RingBuffer<>(6);
+		Assertions.assertEquals(8, rb.capacity());
+		List<Task<Void>> sends = new ArrayList<>();
+		for (int x = 0; x < 100; x++) {
+			sends.add(Task.send(rb, x));
+		}
+		Assertions.assertEquals(8, rb.size());
+		Assertions.assertFalse(rb.offer(100));
+		
+		List<Task<Integer>> receives = new ArrayList<>();
+		for (int x = 0; x < 100; x++) {
+			receives.add(Task.receive(rb));
+		}
+		Task.awaitAllUnsafe(sends);
+		int sum = 0;
+		for (Task<Integer> t : receives) sum += t.awaitUnsafe();
+		Assertions.assertEquals(4950, sum);
+		Assertions.assertTrue(rb.isEmpty());
+		
+		for (int x = 0; x < 5; x++) rb.offer(x);
+		List<Integer> out = new ArrayList<>();
+		Assertions.assertEquals(3, rb.drainTo(out, 3));
+		Assertions.assertEquals(Arrays.asList(0, 1, 2), out);
+		Assertions.assertEquals(2, rb.drainTo(out));
+		Assertions.assertNull(rb.poll());
+		
+		// a cancelled receiver passes its wakeup on, and a throwing callback doesn't strand the others
+		Task<Integer> cancelled = Task.receive(rb);
+		rb.whenNotEmpty(() -> {
+			throw new IllegalStateException("callback");
+		});
+		Task<Integer> waiting = Task.receive(rb);
+		cancelled.cancel();
+		Assertions.assertTrue(rb.offer(9));
+		Assertions.assertEquals(9, waiting.awaitUnsafe());
+		
+		// a collection that throws doesn't leave the drained slots claimed
+		for (int x = 0; x < 8; x++) rb.offer(x);
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> rb.drainTo(Collections.emptyList()));
+		Assertions.assertTrue(rb.isEmpty());
+		Assertions.assertTrue(rb.offer(1));
+	}
+
+	@Test
+	void reduce() {
+		List<Integer> numbers = new ArrayList<>();
+		for (int x = 1; x <= 100000; x++) numbers.add(x);
+		long sum = Task.reduce(numbers, 0L, (Long acc, Integer x) -> acc + x, Long::sum).awaitUnsafe();
+		Assertions.assertEquals(5000050000L, sum);
+		Assertions.assertEquals(0L, Task.reduce(new ArrayList<Integer>(), 0L, (Long acc, Integer x) -> acc + x, Long::sum).awaitUnsafe());
+		
+		Map<Boolean, Long> evens = Task.collect(numbers, Collectors.partitioningBy((Integer x) -> x % 2 == 0, Collectors.counting())).awaitUnsafe();
+		Assertions.assertEquals(50000L, evens.get(true));
+		List<Integer> copy = Task.collect(numbers, Collectors.toList()).awaitUnsafe();
+		Assertions.assertEquals(numbers, copy);
+	}
+
+	@Test
+	void remoteExecutor() throws IOException {
+		try (RemoteTaskExecutor rex = new RemoteTaskExecutor(2)) {
+			List<Task<Long>> pids = new ArrayList<>();
+			for (int x = 0; x < 6; x++) {
+				pids.add(rex.submit(() -> ProcessHandle.current().pid()));
+			}
+			for (Task<Long> t : pids) {
+				Assertions.assertNotEquals(ProcessHandle.current().pid(), t.awaitUnsafe());
+			}
+			
+			Task<Object> thrown = rex.submit(() -> {
+				throw new IllegalStateException("remote");
+			});
+			Assertions.assertEquals("remote", Assertions.assertThrows(IllegalStateException.class, thrown::await).getMessage());
+			
+			Task<Integer> crashed = rex.submit(() -> {
+				Runtime.getRuntime().halt(3);
+				return 0;
+			});
+			Assertions.assertThrows(UncheckedIOException.class, crashed::await);
+			Assertions.assertEquals(1, rex.getRestartCount());
+			Assertions.assertEquals(42, rex.submit(() -> 42).awaitUnsafe());
+			
+			// workers that die while idle are replaced without failing the next supplier
+			ProcessHandle.current().children().forEach(ProcessHandle::destroyForcibly);
+			Assertions.assertEquals(7, rex.submit(() -> 7).awaitUnsafe());
+		}
+	}
+
+	private String counted(AtomicInteger runs, String result) {
+		runs.incrementAndGet();
+		return result;
+	}
+
 	private void sleep(long millis) {
 		try {
 			Thread.sleep(millis);